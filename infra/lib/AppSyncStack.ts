@@ -101,7 +101,17 @@ export class AppSyncStack extends cdk.Stack {
             typeName: 'Query',
             fieldName: 'runRedshiftQuery',
             requestMappingTemplate: appsync.MappingTemplate.lambdaRequest(),
-            responseMappingTemplate: appsync.MappingTemplate.lambdaResult(),
+            // The Lambda answers with serialized JSON, or {"error": ...} when the query failed
+            responseMappingTemplate: appsync.MappingTemplate.fromString(`
+                #if($ctx.error)
+                    $util.error($ctx.error.message, $ctx.error.type)
+                #end
+                #set($result = $util.parseJson($ctx.result))
+                #if($result.error)
+                    $util.error($result.error, "RedshiftQueryError")
+                #end
+                $util.toJson($result)
+            `),
             maxBatchSize: 100
         });
     }
@@ -2,19 +2,26 @@ import * as cdk from 'aws-cdk-lib';
 import * as lambda from 'aws-cdk-lib/aws-lambda';
 import * as ec2 from 'aws-cdk-lib/aws-ec2';
 import * as iam from 'aws-cdk-lib/aws-iam';
+import * as s3 from 'aws-cdk-lib/aws-s3';
 
 interface LambdaStackProps extends cdk.StackProps {
     vpc: ec2.Vpc;
     redshiftJdbcUrl: string;
     redshiftIAMRole: string;
+    dataBucketArn: string;
 }
 
+// Written by the ingestion job on completion (ingestion.completion-marker-key); its ETag invalidates the query cache
+const INGESTION_MARKER_KEY = 'markers/ingestion-completed';
+
 export class LambdaStack extends cdk.Stack {
     public readonly resolverLambda: lambda.Function;
 
     constructor(scope: cdk.App, id: string, props: LambdaStackProps) {
         super(scope, id, props);
 
+        const dataBucket = s3.Bucket.fromBucketArn(this, 'DataBucket', props.dataBucketArn);
+
         const lambdaExecutionRole = new iam.Role(this, 'LambdaExecutionRole', {
             assumedBy: new iam.ServicePrincipal('lambda.amazonaws.com'),
             managedPolicies: [
@@ -31,6 +38,22 @@ export class LambdaStack extends cdk.Stack {
                             resources: [props.redshiftIAMRole]
                         })
                     ]
+                }),
+                'IngestionMarkerRead': new iam.PolicyDocument({
+                    statements: [
+                        new iam.PolicyStatement({
+                            effect: iam.Effect.ALLOW,
+                            actions: ['s3:GetObject'],
+                            resources: [dataBucket.arnForObjects(INGESTION_MARKER_KEY)]
+                        }),
+                        // Lets HeadObject answer 404 rather than 403 before the first ingestion run
+                        new iam.PolicyStatement({
+                            effect: iam.Effect.ALLOW,
+                            actions: ['s3:ListBucket'],
+                            resources: [dataBucket.bucketArn],
+                            conditions: {StringEquals: {'s3:prefix': INGESTION_MARKER_KEY}}
+                        })
+                    ]
                 })
             }
         });
@@ -45,6 +68,8 @@ export class LambdaStack extends cdk.Stack {
             environment: {
                 REDSHIFT_JDBC_URL: props.redshiftJdbcUrl,
                 REDSHIFT_IAM_ROLE: props.redshiftIAMRole,
+                INGESTION_MARKER_BUCKET: dataBucket.bucketName,
+                INGESTION_MARKER_KEY: INGESTION_MARKER_KEY,
             },
             role: lambdaExecutionRole,
             snapStart: lambda.SnapStartConf.ON_PUBLISHED_VERSIONS
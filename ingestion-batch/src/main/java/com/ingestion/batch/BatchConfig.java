@@ -2,49 +2,80 @@ package com.ingestion.batch;
 
 import jakarta.annotation.PostConstruct;
 import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.job.builder.SimpleJobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.ResultSet;
 
 @Configuration
 @EnableBatchProcessing(dataSourceRef = "batchDataSource")
 public class BatchConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(BatchConfig.class);
+
     private final DataSource batchDataSource;
     private final DataSource redshiftDataSource;
     private final PlatformTransactionManager batchTransactionManager;
     private final PlatformTransactionManager redshiftTransactionManager;
+    private final boolean partitionEnabled;
+    private final int partitionConcurrency;
+    private final int chunkSize;
+    private final boolean fanOutEnabled;
 
     public BatchConfig(
             @Qualifier("batchDataSource") DataSource batchDataSource,
             @Qualifier("redshiftDataSource") DataSource redshiftDataSource,
             @Qualifier("transactionManager") PlatformTransactionManager batchTransactionManager,
-            @Qualifier("redshiftTransactionManager") PlatformTransactionManager redshiftTransactionManager) {
+            @Qualifier("redshiftTransactionManager") PlatformTransactionManager redshiftTransactionManager,
+            @Value("${ingestion.partition.enabled:true}") boolean partitionEnabled,
+            @Value("${ingestion.partition.concurrency:4}") int partitionConcurrency,
+            @Value("${ingestion.chunk-size:1000}") int chunkSize,
+            @Value("${ingestion.fan-out.enabled:false}") boolean fanOutEnabled) {
         this.batchDataSource = batchDataSource;
         this.redshiftDataSource = redshiftDataSource;
         this.batchTransactionManager = batchTransactionManager;
         this.redshiftTransactionManager = redshiftTransactionManager;
+        this.partitionEnabled = partitionEnabled;
+        this.partitionConcurrency = partitionConcurrency;
+        this.chunkSize = chunkSize;
+        this.fanOutEnabled = fanOutEnabled;
     }
 
     @PostConstruct
     public void initializeBatchSchema() {
         try (Connection connection = batchDataSource.getConnection()) {
+            // The repository may be file backed so that a restarted job can skip completed partitions
+            try (ResultSet tables = connection.getMetaData().getTables(null, null, "BATCH_JOB_INSTANCE", null)) {
+                if (tables.next()) {
+                    return;
+                }
+            }
             ScriptUtils.executeSqlScript(connection, new ClassPathResource("org/springframework/batch/core/schema-h2.sql"));
-            System.out.println("Spring Batch Metadata Tables Created!");
+            logger.info("Spring Batch metadata tables created");
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize Spring Batch schema", e);
         }
@@ -61,16 +92,47 @@ public class BatchConfig {
         return factory.getObject();
     }
 
+    /**
+     * In fan-out mode a single ingestion step reads each S3 object once and writes it to both Redshift and
+     * OpenSearch; otherwise every sink has its own ingestion step. Once Redshift is loaded the rollup tables are
+     * brought up to date and the tables vacuumed and analyzed as needed. A blue/green full reload loads a new
+     * index and table and swaps them in once each store is loaded.
+     */
     @Bean
     public Job dataIngestionJob(JobRepository jobRepository,
                                 @Qualifier("createTableStep") Step createTableStep,
+                                @Qualifier("blueGreenPrepareStep") Step blueGreenPrepareStep,
+                                @Qualifier("openSearchPrepareStep") Step openSearchPrepareStep,
                                 @Qualifier("redshiftIngestionStep") Step redshiftIngestionStep,
-                                @Qualifier("openSearchIngestionStep") Step openSearchIngestionStep) {
-        return new JobBuilder("dataIngestionJob", jobRepository)
+                                @Qualifier("redshiftCopyStep") Step redshiftCopyStep,
+                                @Qualifier("openSearchIngestionStep") Step openSearchIngestionStep,
+                                @Qualifier("fanOutIngestionStep") Step fanOutIngestionStep,
+                                @Qualifier("openSearchRefreshStep") Step openSearchRefreshStep,
+                                @Qualifier("openSearchSwapStep") Step openSearchSwapStep,
+                                @Qualifier("redshiftSwapStep") Step redshiftSwapStep,
+                                @Qualifier("rollupStep") Step rollupStep,
+                                @Qualifier("redshiftMaintenanceStep") Step redshiftMaintenanceStep,
+                                @Qualifier("watermarkStep") Step watermarkStep,
+                                OpenSearchIndexManager openSearchIndexManager) {
+        SimpleJobBuilder job = new JobBuilder("dataIngestionJob", jobRepository)
                 .incrementer(new RunIdIncrementer())
+                .listener(openSearchIndexManager)
                 .start(createTableStep)
-                //.next(redshiftIngestionStep)
-                .next(openSearchIngestionStep)
+                .next(blueGreenPrepareStep)
+                .next(openSearchPrepareStep);
+        if (fanOutEnabled) {
+            job.next(fanOutIngestionStep)
+                    .next(redshiftCopyStep)
+                    .next(redshiftSwapStep)
+                    .next(rollupStep)
+                    .next(redshiftMaintenanceStep);
+        } else {
+            //job.next(redshiftIngestionStep).next(redshiftCopyStep).next(redshiftSwapStep).next(rollupStep).next(redshiftMaintenanceStep);
+            job.next(openSearchIngestionStep);
+        }
+        return job.next(openSearchRefreshStep)
+                .next(openSearchSwapStep)
+                .next(watermarkStep)
                 .build();
     }
 
@@ -81,29 +143,197 @@ public class BatchConfig {
                 .build();
     }
 
+    @Bean
+    public TaskExecutor ingestionTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(partitionConcurrency);
+        executor.setMaxPoolSize(partitionConcurrency);
+        executor.setThreadNamePrefix("ingestion-");
+        // Idle partition threads must not keep the JVM alive once the job has finished
+        executor.setDaemon(true);
+        return executor;
+    }
+
     @Bean
     public Step redshiftIngestionStep(JobRepository jobRepository,
-                                      S3CsvItemReader s3CsvItemReader,
-                                      StockDataProcessor processor,
-                                      RedshiftItemWriter writer) {
-        return new StepBuilder("redshiftIngestionStep", jobRepository)
-                .<StockData, StockData>chunk(100, redshiftTransactionManager)
+                                      S3ObjectPartitioner partitioner,
+                                      @Qualifier("redshiftWorkerStep") Step redshiftWorkerStep,
+                                      @Qualifier("ingestionTaskExecutor") TaskExecutor taskExecutor) {
+        return partitionedStep("redshiftIngestionStep", jobRepository, partitioner, redshiftWorkerStep, taskExecutor);
+    }
+
+    @Bean
+    public Step redshiftWorkerStep(JobRepository jobRepository,
+                                   S3CsvItemReader s3CsvItemReader,
+                                   StockDataValidator validator,
+                                   RedshiftItemWriter writer) {
+        return new StepBuilder("redshiftWorkerStep", jobRepository)
+                .<StockData, StockData>chunk(chunkSize, redshiftTransactionManager)
                 .reader(s3CsvItemReader)
-                .processor(processor)
                 .writer(writer)
+                .listener(validator)
+                .build();
+    }
+
+    @Bean
+    public Step redshiftCopyStep(JobRepository jobRepository, RedshiftCopyTasklet tasklet) {
+        return new StepBuilder("redshiftCopyStep", jobRepository)
+                .tasklet(tasklet, redshiftTransactionManager)
+                .build();
+    }
+
+    @Bean
+    public Step rollupStep(JobRepository jobRepository, RollupTasklet tasklet) {
+        return new StepBuilder("rollupStep", jobRepository)
+                .tasklet(tasklet, redshiftTransactionManager)
+                .build();
+    }
+
+    /**
+     * Runs without a Redshift transaction, which {@code VACUUM} does not allow.
+     */
+    @Bean
+    public Step redshiftMaintenanceStep(JobRepository jobRepository, RedshiftMaintenanceTasklet tasklet) {
+        return new StepBuilder("redshiftMaintenanceStep", jobRepository)
+                .tasklet(tasklet, batchTransactionManager)
                 .build();
     }
 
     @Bean
     public Step openSearchIngestionStep(JobRepository jobRepository,
-                                        S3CsvItemReader s3CsvItemReader,
-                                        StockDataProcessor processor,
-                                        OpenSearchItemWriter writer) {
-        return new StepBuilder("openSearchIngestionStep", jobRepository)
-                .<StockData, StockData>chunk(100, batchTransactionManager)
+                                        S3ObjectPartitioner partitioner,
+                                        @Qualifier("openSearchWorkerStep") Step openSearchWorkerStep,
+                                        @Qualifier("ingestionTaskExecutor") TaskExecutor taskExecutor) {
+        return partitionedStep("openSearchIngestionStep", jobRepository, partitioner, openSearchWorkerStep, taskExecutor);
+    }
+
+    @Bean
+    public Step openSearchWorkerStep(JobRepository jobRepository,
+                                     S3CsvItemReader s3CsvItemReader,
+                                     StockDataValidator validator,
+                                     OpenSearchItemWriter writer) {
+        return new StepBuilder("openSearchWorkerStep", jobRepository)
+                .<StockData, StockData>chunk(chunkSize, batchTransactionManager)
+                .reader(s3CsvItemReader)
+                .writer(writer)
+                .listener(validator)
+                .build();
+    }
+
+    @Bean
+    public Step fanOutIngestionStep(JobRepository jobRepository,
+                                    S3ObjectPartitioner partitioner,
+                                    @Qualifier("fanOutWorkerStep") Step fanOutWorkerStep,
+                                    @Qualifier("ingestionTaskExecutor") TaskExecutor taskExecutor) {
+        return partitionedStep("fanOutIngestionStep", jobRepository, partitioner, fanOutWorkerStep, taskExecutor);
+    }
+
+    @Bean
+    public Step fanOutWorkerStep(JobRepository jobRepository,
+                                 S3CsvItemReader s3CsvItemReader,
+                                 StockDataValidator validator,
+                                 FanOutItemWriter writer) {
+        return new StepBuilder("fanOutWorkerStep", jobRepository)
+                .<StockData, StockData>chunk(chunkSize, redshiftTransactionManager)
                 .reader(s3CsvItemReader)
-                .processor(processor)
                 .writer(writer)
+                .listener(validator)
+                .build();
+    }
+
+    /**
+     * Starts a blue/green reload for full refreshes when enabled; see {@link BlueGreenDeployment}.
+     */
+    @Bean
+    public Step blueGreenPrepareStep(JobRepository jobRepository, BlueGreenDeployment blueGreen) {
+        return new StepBuilder("blueGreenPrepareStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    blueGreen.begin(jobExecution(chunkContext));
+                    return RepeatStatus.FINISHED;
+                }, redshiftTransactionManager)
+                .build();
+    }
+
+    @Bean
+    public Step redshiftSwapStep(JobRepository jobRepository, BlueGreenDeployment blueGreen) {
+        return new StepBuilder("redshiftSwapStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    blueGreen.swapTable(jobExecution(chunkContext));
+                    return RepeatStatus.FINISHED;
+                }, redshiftTransactionManager)
+                .build();
+    }
+
+    @Bean
+    public Step openSearchSwapStep(JobRepository jobRepository, BlueGreenDeployment blueGreen) {
+        return new StepBuilder("openSearchSwapStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    blueGreen.swapIndex(jobExecution(chunkContext));
+                    return RepeatStatus.FINISHED;
+                }, batchTransactionManager)
+                .build();
+    }
+
+    /**
+     * Installs the OpenSearch index template and switches the index to bulk-load settings before any ingestion step.
+     */
+    @Bean
+    public Step openSearchPrepareStep(JobRepository jobRepository, OpenSearchIndexManager indexManager,
+                                      BlueGreenDeployment blueGreen) {
+        return new StepBuilder("openSearchPrepareStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    indexManager.prepareLoad(blueGreen.openSearchIndex(jobExecution(chunkContext)));
+                    return RepeatStatus.FINISHED;
+                }, batchTransactionManager)
+                .build();
+    }
+
+    /**
+     * Bulk requests are sent without refresh, so the index is refreshed once after the ingestion step, after its
+     * refresh interval and replicas are restored.
+     */
+    @Bean
+    public Step openSearchRefreshStep(JobRepository jobRepository, OpenSearchIndexManager indexManager,
+                                      BlueGreenDeployment blueGreen) {
+        return new StepBuilder("openSearchRefreshStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    indexManager.finishLoad(blueGreen.openSearchIndex(jobExecution(chunkContext)));
+                    return RepeatStatus.FINISHED;
+                }, batchTransactionManager)
+                .build();
+    }
+
+    /**
+     * Records the S3 objects ingested by any execution of this job instance once every ingestion step has completed.
+     */
+    @Bean
+    public Step watermarkStep(JobRepository jobRepository, S3ObjectWatermarkStore watermarkStore) {
+        return new StepBuilder("watermarkStep", jobRepository)
+                .tasklet((contribution, chunkContext) -> {
+                    watermarkStore.persist(jobExecution(chunkContext).getJobInstance());
+                    return RepeatStatus.FINISHED;
+                }, redshiftTransactionManager)
+                .build();
+    }
+
+    /**
+     * Fans the worker step out over one partition per S3 object. With partitioning disabled the worker
+     * step runs on its own and reads every object under the prefix sequentially.
+     */
+    private Step partitionedStep(String name, JobRepository jobRepository, Partitioner partitioner,
+                                 Step workerStep, TaskExecutor taskExecutor) {
+        if (!partitionEnabled) {
+            return workerStep;
+        }
+        return new StepBuilder(name, jobRepository)
+                .partitioner(workerStep.getName(), partitioner)
+                .step(workerStep)
+                .gridSize(partitionConcurrency)
+                .taskExecutor(taskExecutor)
                 .build();
     }
+
+    private static JobExecution jobExecution(ChunkContext chunkContext) {
+        return chunkContext.getStepContext().getStepExecution().getJobExecution();
+    }
 }
@@ -1,30 +1,92 @@
 package com.ingestion.batch;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
 import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.TimeUnit;
+
 @Component
 public class BatchJobRunner {
+    public static final String FULL_REFRESH = "fullRefresh";
+
     private static final Logger logger = LoggerFactory.getLogger(BatchJobRunner.class);
     private final JobLauncher jobLauncher;
+    private final JobExplorer jobExplorer;
     private final Job dataIngestionJob;
+    private final MeterRegistry meterRegistry;
+    private final IngestionCompletionMarker completionMarker;
+    private final boolean fullRefresh;
 
-    public BatchJobRunner(JobLauncher jobLauncher, Job dataIngestionJob) {
+    public BatchJobRunner(JobLauncher jobLauncher, JobExplorer jobExplorer, Job dataIngestionJob, MeterRegistry meterRegistry,
+                          IngestionCompletionMarker completionMarker,
+                          @Value("${ingestion.full-refresh:false}") boolean fullRefresh) {
         this.jobLauncher = jobLauncher;
+        this.jobExplorer = jobExplorer;
         this.dataIngestionJob = dataIngestionJob;
+        this.meterRegistry = meterRegistry;
+        this.completionMarker = completionMarker;
+        this.fullRefresh = fullRefresh;
     }
 
     public void runJob() {
         try {
-            JobExecution execution = jobLauncher.run(dataIngestionJob, new JobParameters());
+            JobExecution execution = jobLauncher.run(dataIngestionJob, nextJobParameters());
             System.out.println("Job Status: " + execution.getStatus());
+            if (execution.getStatus() == BatchStatus.COMPLETED) {
+                completionMarker.publish(execution.getJobInstance().getInstanceId());
+            }
         } catch (Exception e) {
             logger.error("Error during job execution", e);
         }
+        logConnectionPoolMetrics();
+        logValidationMetrics();
+    }
+
+    private void logValidationMetrics() {
+        meterRegistry.find("ingestion.validation.rejected").counters().stream()
+                .filter(rejected -> rejected.count() > 0)
+                .forEach(rejected -> logger.info("Validation rule {} rejected {} rows",
+                        rejected.getId().getTag("rule"), (long) rejected.count()));
+    }
+
+    private void logConnectionPoolMetrics() {
+        meterRegistry.find("hikaricp.connections.acquire").timers().forEach(acquire -> logger.info(
+                "Connection pool {}: {} connections acquired, mean wait {} ms, max wait {} ms",
+                acquire.getId().getTag("pool"), acquire.count(),
+                acquire.mean(TimeUnit.MILLISECONDS), acquire.max(TimeUnit.MILLISECONDS)));
+        meterRegistry.find("hikaricp.connections.usage").timers().forEach(usage -> logger.info(
+                "Connection pool {}: mean connection hold {} ms, max hold {} ms",
+                usage.getId().getTag("pool"), usage.mean(TimeUnit.MILLISECONDS), usage.max(TimeUnit.MILLISECONDS)));
+    }
+
+    /**
+     * Restarts the last job instance if it failed or was stopped, so partitions that already completed are
+     * skipped. Otherwise starts a new instance, incremental unless {@code ingestion.full-refresh} is set.
+     */
+    private JobParameters nextJobParameters() {
+        JobInstance lastInstance = jobExplorer.getLastJobInstance(dataIngestionJob.getName());
+        if (lastInstance != null) {
+            JobExecution lastExecution = jobExplorer.getLastJobExecution(lastInstance);
+            if (lastExecution != null
+                    && (lastExecution.getStatus() == BatchStatus.FAILED || lastExecution.getStatus() == BatchStatus.STOPPED)) {
+                logger.info("Restarting failed job instance {}", lastInstance.getInstanceId());
+                return lastExecution.getJobParameters();
+            }
+        }
+        return new JobParametersBuilder(jobExplorer)
+                .getNextJobParameters(dataIngestionJob)
+                .addString(FULL_REFRESH, Boolean.toString(fullRefresh))
+                .toJobParameters();
     }
 }
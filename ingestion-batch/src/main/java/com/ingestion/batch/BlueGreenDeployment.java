@@ -0,0 +1,250 @@
+package com.ingestion.batch;
+
+import org.opensearch.client.json.JsonData;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.opensearch._types.OpenSearchException;
+import org.opensearch.client.opensearch.indices.add_block.IndicesBlockOptions;
+import org.opensearch.client.opensearch.indices.update_aliases.Action;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Blue/green full reloads. With {@code ingestion.blue-green.enabled}, a job running with {@code fullRefresh=true}
+ * does not write into the live data: OpenSearch documents go to a new index
+ * {@code <aws.opensearch.index>-v<version>} and Redshift rows (loaded by the fan-out flow) to a shadow table
+ * {@code stock_data_v<version>}, both created with their managed layout, so queries keep seeing the previous load
+ * until the new one is complete.
+ * <p>
+ * Once loaded, each store is verified on its own, by requiring at least {@code ingestion.blue-green.min-row-ratio}
+ * of the live row or document count, and then swapped in: the shadow table is renamed to {@code stock_data} in one
+ * transaction, the previous table becoming {@code stock_data_before_v<version>}, and {@code aws.opensearch.index}
+ * becomes an alias moved to the new index in a single atomic alias update (a concrete index of that name is kept
+ * as the oldest version, see {@link #swapIndex}). The newest
+ * {@code ingestion.blue-green.keep-versions} previous tables and indices are kept for rollback; older ones are
+ * dropped. A store failing verification is left untouched and fails the job.
+ * <p>
+ * The names are kept in the job execution context, so a restarted job keeps loading into the same index and table.
+ */
+@Component
+public class BlueGreenDeployment {
+
+    public static final String OPENSEARCH_INDEX = "blueGreen.openSearchIndex";
+    public static final String REDSHIFT_TABLE = "blueGreen.redshiftTable";
+
+    private static final Logger logger = LoggerFactory.getLogger(BlueGreenDeployment.class);
+    private static final DateTimeFormatter VERSION = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final int VERSION_DIGITS = 14;
+    private static final String LIVE_TABLE = ManagedTable.STOCK_DATA.name();
+    private static final String RETIRED_TABLE_PREFIX = LIVE_TABLE + "_before_";
+
+    private final JdbcTemplate redshiftJdbcTemplate;
+    private final OpenSearchAsyncClient openSearchClient;
+    private final String alias;
+    private final boolean enabled;
+    private final int keepVersions;
+    private final double minRowRatio;
+    // Only the fan-out flow loads Redshift
+    private final boolean redshiftLoaded;
+
+    public BlueGreenDeployment(@Qualifier("redshiftJdbcTemplate") JdbcTemplate redshiftJdbcTemplate,
+                               OpenSearchAsyncClient openSearchClient,
+                               @Value("${aws.opensearch.index}") String alias,
+                               @Value("${ingestion.blue-green.enabled:false}") boolean enabled,
+                               @Value("${ingestion.blue-green.keep-versions:2}") int keepVersions,
+                               @Value("${ingestion.blue-green.min-row-ratio:0.9}") double minRowRatio,
+                               @Value("${ingestion.fan-out.enabled:false}") boolean redshiftLoaded) {
+        this.redshiftJdbcTemplate = redshiftJdbcTemplate;
+        this.openSearchClient = openSearchClient;
+        this.alias = alias;
+        this.enabled = enabled;
+        this.keepVersions = keepVersions;
+        this.minRowRatio = minRowRatio;
+        this.redshiftLoaded = redshiftLoaded;
+    }
+
+    /**
+     * The OpenSearch index the job loads: the new version of a blue/green reload, otherwise
+     * {@code aws.opensearch.index}.
+     */
+    public String openSearchIndex(JobExecution jobExecution) {
+        String index = jobExecution.getExecutionContext().getString(OPENSEARCH_INDEX, null);
+        return index != null ? index : alias;
+    }
+
+    /**
+     * Starts a blue/green reload if the job is a full refresh: records the new index and table names and creates
+     * the shadow table. The index is created by {@link OpenSearchIndexManager#prepareLoad}.
+     */
+    public void begin(JobExecution jobExecution) {
+        ExecutionContext context = jobExecution.getExecutionContext();
+        boolean fullRefresh = Boolean.parseBoolean(jobExecution.getJobParameters().getString(BatchJobRunner.FULL_REFRESH));
+        if (!enabled || !fullRefresh || context.containsKey(OPENSEARCH_INDEX)) {
+            return;
+        }
+        String version = "v" + VERSION.format(jobExecution.getCreateTime());
+        context.putString(OPENSEARCH_INDEX, alias + "-" + version);
+        if (redshiftLoaded) {
+            String table = LIVE_TABLE + "_" + version;
+            redshiftJdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+            redshiftJdbcTemplate.execute(ManagedTable.STOCK_DATA.createSql(table, ManagedTable.isRedshift(redshiftJdbcTemplate)));
+            context.putString(REDSHIFT_TABLE, table);
+        }
+        logger.info("Blue/green reload {} into OpenSearch index {} and Redshift table {}",
+                version, context.getString(OPENSEARCH_INDEX), context.getString(REDSHIFT_TABLE, "(not loaded)"));
+    }
+
+    /**
+     * Verifies the shadow table and renames it to {@code stock_data}; runs in the Redshift transaction of its step.
+     */
+    public void swapTable(JobExecution jobExecution) {
+        String table = jobExecution.getExecutionContext().getString(REDSHIFT_TABLE, null);
+        if (table == null) {
+            return;
+        }
+        long loaded = count("SELECT COUNT(*) FROM " + table);
+        long live = count("SELECT COUNT(*) FROM " + LIVE_TABLE);
+        verify(table, loaded, live);
+        String retired = RETIRED_TABLE_PREFIX + table.substring(LIVE_TABLE.length() + 1);
+        redshiftJdbcTemplate.execute("ALTER TABLE " + LIVE_TABLE + " RENAME TO " + retired);
+        redshiftJdbcTemplate.execute("ALTER TABLE " + table + " RENAME TO " + LIVE_TABLE);
+        logger.info("Swapped {} ({} rows) in as {}, previous table kept as {}", table, loaded, LIVE_TABLE, retired);
+
+        List<String> versions = redshiftJdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+            List<String> tables = new ArrayList<>();
+            try (ResultSet rs = connection.getMetaData().getTables(null, connection.getSchema(), "%", new String[]{"TABLE"})) {
+                while (rs.next()) {
+                    String name = rs.getString("TABLE_NAME").toLowerCase();
+                    if (name.startsWith(RETIRED_TABLE_PREFIX)) {
+                        tables.add(name);
+                    }
+                }
+            }
+            return tables;
+        });
+        for (String old : expired(versions)) {
+            redshiftJdbcTemplate.execute("DROP TABLE " + old);
+            logger.info("Dropped previous table {}", old);
+        }
+    }
+
+    /**
+     * Verifies the new index and moves the {@code aws.opensearch.index} alias to it. A concrete index that still
+     * holds the alias name from before blue/green reloads is first cloned to
+     * {@code <aws.opensearch.index>-v00000000000000}, the oldest version, and then deleted in the same alias
+     * update.
+     */
+    public void swapIndex(JobExecution jobExecution) {
+        String index = jobExecution.getExecutionContext().getString(OPENSEARCH_INDEX, null);
+        if (index == null) {
+            return;
+        }
+        try {
+            long loaded = openSearchClient.count(count -> count.index(index)).join().count();
+            boolean liveExists = openSearchClient.indices().exists(exists -> exists.index(alias)).join().value();
+            long live = liveExists ? openSearchClient.count(count -> count.index(alias)).join().count() : 0;
+            verify(index, loaded, live);
+
+            Set<String> holders = aliasHolders();
+            List<Action> actions = new ArrayList<>();
+            actions.add(Action.of(action -> action.add(add -> add.index(index).alias(alias))));
+            for (String holder : holders) {
+                actions.add(Action.of(action -> action.remove(remove -> remove.index(holder).alias(alias))));
+            }
+            boolean concreteLive = liveExists && holders.isEmpty();
+            if (concreteLive) {
+                String kept = keepConcreteIndex();
+                logger.warn("{} is an index rather than an alias; it is kept as {} and replaced by the alias", alias, kept);
+                actions.add(Action.of(action -> action.removeIndex(remove -> remove.index(alias))));
+            }
+            try {
+                openSearchClient.indices().updateAliases(update -> update.actions(actions)).join();
+            } catch (RuntimeException e) {
+                if (concreteLive) {
+                    openSearchClient.indices().putSettings(put -> put.index(alias).settings(settings -> settings.blocksWrite(false))).join();
+                }
+                throw e;
+            }
+            logger.info("Moved alias {} to {} ({} documents) from {}", alias, index, loaded, holders);
+
+            List<String> versions = new ArrayList<>(openSearchClient.indices().get(get -> get.index(alias + "-v*")).join().result().keySet());
+            versions.remove(index);
+            for (String old : expired(versions)) {
+                openSearchClient.indices().delete(delete -> delete.index(old)).join();
+                logger.info("Deleted previous index {}", old);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to swap OpenSearch index " + index, e);
+        }
+    }
+
+    /**
+     * Clones the concrete index named like the alias to the oldest version name, so its documents are kept for
+     * rollback like a previous version once the alias update deletes it. Cloning requires the index to be
+     * write-blocked; the block is cleared on the copy only, the original is deleted with the block in place.
+     */
+    private String keepConcreteIndex() throws IOException {
+        String kept = alias + "-v" + "0".repeat(VERSION_DIGITS);
+        // A copy left by a failed swap may predate writes to the concrete index since
+        if (openSearchClient.indices().exists(exists -> exists.index(kept)).join().value()) {
+            openSearchClient.indices().delete(delete -> delete.index(kept)).join();
+        }
+        openSearchClient.indices().addBlock(block -> block.index(alias).block(IndicesBlockOptions.Write)).join();
+        try {
+            openSearchClient.indices().clone(clone -> clone.index(alias).target(kept)
+                    .settings("index.blocks.write", JsonData.of(false))).join();
+        } catch (RuntimeException e) {
+            openSearchClient.indices().putSettings(put -> put.index(alias).settings(settings -> settings.blocksWrite(false))).join();
+            throw e;
+        }
+        return kept;
+    }
+
+    private Set<String> aliasHolders() throws IOException {
+        try {
+            return openSearchClient.indices().getAlias(get -> get.name(alias)).join().result().keySet();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof OpenSearchException notFound && notFound.status() == 404) {
+                return Set.of();
+            }
+            throw e;
+        }
+    }
+
+    private void verify(String target, long loaded, long live) {
+        if (loaded == 0 || loaded < live * minRowRatio) {
+            throw new IllegalStateException(String.format(
+                    "Blue/green verification of %s failed: %d rows loaded, %d live, at least %.0f%% required",
+                    target, loaded, live, minRowRatio * 100));
+        }
+    }
+
+    /**
+     * Versions beyond the newest {@code keepVersions}; version suffixes are timestamps, so names sort by age.
+     */
+    private List<String> expired(List<String> versions) {
+        List<String> sorted = new ArrayList<>(versions);
+        sorted.sort(Comparator.reverseOrder());
+        return sorted.subList(Math.min(keepVersions, sorted.size()), sorted.size());
+    }
+
+    private long count(String sql) {
+        Long count = redshiftJdbcTemplate.queryForObject(sql, Long.class);
+        return count == null ? 0 : count;
+    }
+}
@@ -1,41 +1,110 @@
 package com.ingestion.batch;
 
 import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.StepContribution;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Creates the Redshift tables the job writes and keeps the {@link ManagedTable}s in their declared physical
+ * design. An existing managed table is compared with its declaration through {@code pg_table_def}; if its
+ * encodings, distribution key or sort key have drifted it is rebuilt with a deep copy (create, copy, drop, rename)
+ * in the step transaction, unless {@code ingestion.schema.migrate-on-drift} is off. A table whose columns differ
+ * is only reported. On databases other than Redshift, such as a local stand-in, the tables are created without the
+ * physical design.
+ */
 @Component
 public class CreateTableTasklet implements Tasklet {
 
+    private static final Logger logger = LoggerFactory.getLogger(CreateTableTasklet.class);
+
     private final JdbcTemplate redshiftJdbcTemplate;
+    private final boolean migrateOnDrift;
 
-    public CreateTableTasklet(@Qualifier("redshiftJdbcTemplate") JdbcTemplate redshiftJdbcTemplate) {
+    public CreateTableTasklet(@Qualifier("redshiftJdbcTemplate") JdbcTemplate redshiftJdbcTemplate,
+                              @Value("${ingestion.schema.migrate-on-drift:true}") boolean migrateOnDrift) {
         this.redshiftJdbcTemplate = redshiftJdbcTemplate;
+        this.migrateOnDrift = migrateOnDrift;
     }
 
     @Override
     public RepeatStatus execute(@NonNull StepContribution contribution, @NonNull ChunkContext chunkContext) {
-        String sql = """
-                    CREATE TABLE IF NOT EXISTS stock_data (
+        boolean redshift = ManagedTable.isRedshift(redshiftJdbcTemplate);
+        for (ManagedTable table : ManagedTable.all()) {
+            createOrMigrate(table, redshift);
+        }
+        redshiftJdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS stock_data_copy_log (
+                        manifest_url VARCHAR(1024) NOT NULL,
+                        loaded_at TIMESTAMP DEFAULT GETDATE()
+                    );
+                """);
+        redshiftJdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS ingestion_watermark (
+                        s3_key VARCHAR(1024) NOT NULL,
+                        etag VARCHAR(128) NOT NULL,
+                        last_modified TIMESTAMP,
+                        processed_at TIMESTAMP DEFAULT GETDATE()
+                    );
+                """);
+        redshiftJdbcTemplate.execute("""
+                    CREATE TABLE IF NOT EXISTS stock_data_rollup_pending (
                         stock_symbol VARCHAR(10) NOT NULL,
-                        trade_date DATE NOT NULL,
-                        open_price DECIMAL(10,4),
-                        high_price DECIMAL(10,4),
-                        low_price DECIMAL(10,4),
-                        close_price DECIMAL(10,4),
-                        adjusted_close_price DECIMAL(10,4),
-                        volume BIGINT,
-                        dividend_amount DECIMAL(10,4),
-                        split_coefficient DECIMAL(10,4),
-                        PRIMARY KEY (stock_symbol, trade_date)
+                        min_date DATE NOT NULL,
+                        max_date DATE NOT NULL
                     );
-                """;
-        redshiftJdbcTemplate.execute(sql);
+                """);
         return RepeatStatus.FINISHED;
     }
+
+    private void createOrMigrate(ManagedTable table, boolean redshift) {
+        if (!redshift) {
+            redshiftJdbcTemplate.execute(table.createSql(table.name(), false));
+            return;
+        }
+        Map<String, String> actual = new LinkedHashMap<>();
+        redshiftJdbcTemplate.query("""
+                    SELECT "column", encoding, distkey, sortkey
+                    FROM pg_table_def
+                    WHERE schemaname = current_schema() AND tablename = ?
+                """, rs -> {
+            actual.put(rs.getString(1), rs.getString(2) + "," + rs.getBoolean(3) + "," + rs.getInt(4));
+        }, table.name());
+        if (actual.isEmpty()) {
+            redshiftJdbcTemplate.execute(table.createSql(table.name(), true));
+            logger.info("Created table {}", table.name());
+            return;
+        }
+        Map<String, String> expected = table.expectedLayout();
+        if (expected.equals(actual)) {
+            return;
+        }
+        if (!expected.keySet().equals(actual.keySet())) {
+            logger.error("Table {} has columns {} but {} are declared; not migrating it", table.name(), actual.keySet(), expected.keySet());
+            return;
+        }
+        logger.warn("Table {} has drifted from its declared design (encoding,distkey,sortkey): expected {}, found {}",
+                table.name(), expected, actual);
+        if (!migrateOnDrift) {
+            return;
+        }
+        String columns = String.join(", ", expected.keySet());
+        String migration = table.name() + "_migration";
+        redshiftJdbcTemplate.execute("DROP TABLE IF EXISTS " + migration);
+        redshiftJdbcTemplate.execute(table.createSql(migration, true));
+        int rows = redshiftJdbcTemplate.update("INSERT INTO " + migration + " (" + columns + ") SELECT " + columns + " FROM " + table.name());
+        redshiftJdbcTemplate.execute("DROP TABLE " + table.name());
+        redshiftJdbcTemplate.execute("ALTER TABLE " + migration + " RENAME TO " + table.name());
+        logger.info("Rebuilt {} with its declared design, copying {} rows", table.name(), rows);
+    }
 }
@@ -0,0 +1,269 @@
+package com.ingestion.batch;
+
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import software.amazon.awssdk.http.Abortable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Parses the {@code daily_adjusted_*} CSV layout
+ * ({@code timestamp,open,high,low,close,adjusted_close,volume,dividend_amount,split_coefficient}) straight from
+ * the bytes of the stream into {@link StockData}, without building strings, field sets or {@code BigDecimal}s
+ * per row. The header line is skipped and blank lines are ignored; empty numeric fields become
+ * {@link StockData#NULL_VALUE}. Quoted fields are not supported, as the layout never contains them.
+ * <p>
+ * The first line of the stream is always skipped: it is the header, or, when the stream starts inside an object
+ * split, the tail of a line that belongs to the previous split. Only lines that start before {@code limit}
+ * bytes into the stream are read; the line crossing that boundary is read to its end.
+ * <p>
+ * The item count is saved under the reader's name like it was for {@code FlatFileItemReader}, so a restarted
+ * partition skips the rows it already read.
+ */
+class DailyAdjustedCsvReader extends AbstractItemCountingItemStreamItemReader<StockData> {
+
+    static final String NAME = "s3CsvItemReader";
+    // Where AbstractItemCountingItemStreamItemReader saves the number of rows read
+    static final String READ_COUNT_KEY = NAME + ".read.count";
+    private static final int FIELD_COUNT = 9;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000};
+
+    private final String resourceName;
+    private final String stockSymbol;
+    private final InputStream content;
+    private final long limit;
+    private final byte[] buffer;
+    private final int[] fieldStarts = new int[FIELD_COUNT + 1];
+    private byte[] line = new byte[256];
+    private long bufferOffset;
+    private int bufferPosition;
+    private int bufferLimit;
+    private boolean exhausted;
+    private int lineLength;
+    private int lineNumber;
+
+    DailyAdjustedCsvReader(String resourceName, String stockSymbol, InputStream content, int bufferSize) {
+        this(resourceName, stockSymbol, content, bufferSize, Long.MAX_VALUE);
+    }
+
+    DailyAdjustedCsvReader(String resourceName, String stockSymbol, InputStream content, int bufferSize, long limit) {
+        this.resourceName = resourceName;
+        this.stockSymbol = stockSymbol.intern();
+        this.content = content;
+        this.limit = limit;
+        this.buffer = new byte[bufferSize];
+        setName(NAME);
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        nextLine(); // Skip the CSV header or the end of the previous split's last line
+    }
+
+    @Override
+    protected StockData doRead() throws Exception {
+        while (bufferOffset + bufferPosition < limit && nextLine()) {
+            if (lineLength > 0) {
+                return parseLine();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (!exhausted && content instanceof Abortable) {
+            ((Abortable) content).abort(); // Drops the connection instead of draining the rest of a ranged response
+        }
+        content.close();
+    }
+
+    /**
+     * Copies the next line, without its terminator, into {@link #line}. Returns {@code false} at the end of
+     * the stream.
+     */
+    private boolean nextLine() throws IOException {
+        lineLength = 0;
+        boolean readAny = false;
+        while (true) {
+            if (bufferPosition == bufferLimit) {
+                bufferOffset += bufferLimit;
+                bufferLimit = content.read(buffer, 0, buffer.length);
+                bufferPosition = 0;
+                if (bufferLimit <= 0) {
+                    bufferLimit = 0;
+                    exhausted = true;
+                    if (readAny) {
+                        lineNumber++;
+                    }
+                    return readAny;
+                }
+            }
+            readAny = true;
+            int start = bufferPosition;
+            while (bufferPosition < bufferLimit && buffer[bufferPosition] != '\n') {
+                bufferPosition++;
+            }
+            appendToLine(start, bufferPosition - start);
+            if (bufferPosition < bufferLimit) {
+                bufferPosition++; // Consume '\n'
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                lineNumber++;
+                return true;
+            }
+        }
+    }
+
+    private void appendToLine(int start, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(buffer, start, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private StockData parseLine() {
+        int fields = 0;
+        fieldStarts[fields++] = 0;
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] == ',') {
+                if (fields == FIELD_COUNT) {
+                    throw parseError("expected " + FIELD_COUNT + " fields", null);
+                }
+                fieldStarts[fields++] = i + 1;
+            }
+        }
+        if (fields != FIELD_COUNT) {
+            throw parseError("expected " + FIELD_COUNT + " fields but found " + fields, null);
+        }
+        fieldStarts[FIELD_COUNT] = lineLength + 1;
+        try {
+            return new StockData(
+                    stockSymbol,
+                    parseEpochDay(fieldStarts[0], fieldEnd(0)),
+                    parseDecimal(fieldStarts[1], fieldEnd(1)),
+                    parseDecimal(fieldStarts[2], fieldEnd(2)),
+                    parseDecimal(fieldStarts[3], fieldEnd(3)),
+                    parseDecimal(fieldStarts[4], fieldEnd(4)),
+                    parseDecimal(fieldStarts[5], fieldEnd(5)),
+                    parseLong(fieldStarts[6], fieldEnd(6)),
+                    parseDecimal(fieldStarts[7], fieldEnd(7)),
+                    parseDecimal(fieldStarts[8], fieldEnd(8))
+            );
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw parseError(e.getMessage(), e);
+        }
+    }
+
+    private int fieldEnd(int field) {
+        return fieldStarts[field + 1] - 1;
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd} date into days since 1970-01-01, using the same proleptic Gregorian
+     * arithmetic as {@link java.time.LocalDate#toEpochDay()}.
+     */
+    private int parseEpochDay(int from, int to) {
+        if (to - from != 10 || line[from + 4] != '-' || line[from + 7] != '-') {
+            throw new IllegalArgumentException("invalid trade date");
+        }
+        long year = parseDigits(from, from + 4);
+        int month = (int) parseDigits(from + 5, from + 7);
+        int day = (int) parseDigits(from + 8, from + 10);
+        boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        int monthLength = month == 2 ? (leapYear ? 29 : 28) : (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+        if (month < 1 || month > 12 || day < 1 || day > monthLength) {
+            throw new IllegalArgumentException("invalid trade date");
+        }
+        long total = 365 * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total -= leapYear ? 1 : 2;
+        }
+        return (int) (total - 719_528); // Days from year 0 to 1970
+    }
+
+    /**
+     * Parses a plain decimal into a long scaled by {@link StockData#PRICE_SCALE}, rounding half up when the
+     * field has more decimal places.
+     */
+    private long parseDecimal(int from, int to) {
+        if (from == to) {
+            return StockData.NULL_VALUE;
+        }
+        boolean negative = line[from] == '-';
+        int position = negative || line[from] == '+' ? from + 1 : from;
+        long value = 0;
+        int decimals = -1;
+        boolean roundUp = false;
+        boolean anyDigit = false;
+        for (; position < to; position++) {
+            byte b = line[position];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (decimals < StockData.PRICE_SCALE) {
+                    value = Math.addExact(Math.multiplyExact(value, 10), b - '0');
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (decimals == StockData.PRICE_SCALE) {
+                    roundUp = b >= '5';
+                    decimals++;
+                }
+            } else {
+                throw new IllegalArgumentException("invalid decimal");
+            }
+        }
+        if (!anyDigit) {
+            throw new IllegalArgumentException("invalid decimal");
+        }
+        int scale = Math.min(Math.max(decimals, 0), StockData.PRICE_SCALE);
+        value = Math.multiplyExact(value, POWERS_OF_TEN[StockData.PRICE_SCALE - scale]);
+        if (roundUp) {
+            value++;
+        }
+        return negative ? -value : value;
+    }
+
+    private long parseLong(int from, int to) {
+        if (from == to) {
+            return StockData.NULL_VALUE;
+        }
+        boolean negative = line[from] == '-';
+        int start = negative ? from + 1 : from;
+        if (start == to) {
+            throw new IllegalArgumentException("invalid volume");
+        }
+        long value = parseDigits(start, to);
+        return negative ? -value : value;
+    }
+
+    private long parseDigits(int from, int to) {
+        long value = 0;
+        for (int position = from; position < to; position++) {
+            byte b = line[position];
+            if (b < '0' || b > '9') {
+                throw new IllegalArgumentException("unexpected character '" + (char) b + "'");
+            }
+            value = Math.addExact(Math.multiplyExact(value, 10), b - '0');
+        }
+        return value;
+    }
+
+    private FlatFileParseException parseError(String reason, Throwable cause) {
+        String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+        String message = "Parsing error at line: " + lineNumber + " in resource=[" + resourceName + "], " + reason
+                + ", input=[" + text + "]";
+        return cause == null
+                ? new FlatFileParseException(message, text, lineNumber)
+                : new FlatFileParseException(message, cause, text, lineNumber);
+    }
+}
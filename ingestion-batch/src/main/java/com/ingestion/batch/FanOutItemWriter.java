@@ -0,0 +1,156 @@
+package com.ingestion.batch;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Writes every chunk to both Redshift and OpenSearch, so each S3 object is downloaded and parsed once.
+ * The chunk is first handed to {@link OpenSearchItemWriter}, which only queues bulk requests, and is then written
+ * to Redshift in the chunk transaction while those requests are in flight.
+ * <p>
+ * A failing OpenSearch sink does not stop Redshift: once OpenSearch fails, or keeps the step waiting for a free
+ * bulk request slot for longer than {@code ingestion.fan-out.max-stall-ms}, the rest of the partition is written
+ * to Redshift only and the step fails at the end. Its execution context is then rewound so that the restarted
+ * step re-reads the object from the start, replaying every row to OpenSearch (which overwrites documents by
+ * their natural key) while skipping the rows Redshift already committed. A Redshift failure fails the chunk and
+ * step as usual.
+ * <p>
+ * Each chunk commits the reader position of the last chunk OpenSearch has acknowledged, as the OpenSearch-only
+ * step does, together with the number of rows Redshift holds. A partition stopped with bulk requests in flight,
+ * even by a killed process, therefore restarts at the acknowledged position and replays the rows after it to
+ * OpenSearch only.
+ */
+@Component
+@StepScope
+public class FanOutItemWriter implements ItemStreamWriter<StockData>, StepExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanOutItemWriter.class);
+    // Rows passed to the writer up to the saved reader position
+    private static final String WRITTEN = "fanOutItemWriter.written";
+    // Rows that Redshift already holds from an earlier attempt of the step
+    private static final String REDSHIFT_WRITTEN = "fanOutItemWriter.redshift.written";
+
+    private final RedshiftItemWriter redshiftWriter;
+    private final OpenSearchItemWriter openSearchWriter;
+    // Reader positions of the chunks written since the last one OpenSearch acknowledged, oldest first
+    private final Deque<WrittenPosition> unacknowledged = new ArrayDeque<>();
+    private long written;
+    private long acknowledgedWritten;
+    private int acknowledgedReadCount;
+    private long redshiftWritten;
+    private Throwable openSearchFailure;
+
+    public FanOutItemWriter(RedshiftItemWriter redshiftWriter,
+                            OpenSearchItemWriter openSearchWriter,
+                            @Value("${ingestion.fan-out.max-stall-ms:60000}") long maxStallMillis) {
+        this.redshiftWriter = redshiftWriter;
+        this.openSearchWriter = openSearchWriter;
+        this.openSearchWriter.setMaxSubmitWait(Duration.ofMillis(maxStallMillis));
+    }
+
+    @Override
+    public void open(@NonNull ExecutionContext executionContext) {
+        // Without a saved reader position the object is read from its first row again
+        written = executionContext.containsKey(DailyAdjustedCsvReader.READ_COUNT_KEY)
+                ? executionContext.getLong(WRITTEN, 0)
+                : 0;
+        acknowledgedWritten = written;
+        acknowledgedReadCount = executionContext.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY, 0);
+        redshiftWritten = executionContext.getLong(REDSHIFT_WRITTEN, 0);
+        openSearchWriter.open(executionContext);
+    }
+
+    /**
+     * Saves every written row as held by Redshift, which commits them with this chunk, and then lets
+     * {@link OpenSearchItemWriter} move the reader position back to the last chunk OpenSearch has acknowledged.
+     * The saved written count follows the reader position back, so a restart replays the unacknowledged rows to
+     * OpenSearch only.
+     */
+    @Override
+    public void update(@NonNull ExecutionContext executionContext) {
+        redshiftWritten = Math.max(redshiftWritten, written);
+        executionContext.putLong(REDSHIFT_WRITTEN, redshiftWritten);
+        if (!executionContext.containsKey(DailyAdjustedCsvReader.READ_COUNT_KEY)) {
+            executionContext.putLong(WRITTEN, written);
+            return;
+        }
+        // Rows rejected by validation are read but not written, so the counts are kept side by side
+        unacknowledged.add(new WrittenPosition(executionContext.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY), written));
+        if (openSearchFailure == null) {
+            openSearchWriter.update(executionContext);
+            acknowledgedReadCount = executionContext.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY);
+        } else {
+            // Chunks written after the sink failed never reached OpenSearch
+            executionContext.putInt(DailyAdjustedCsvReader.READ_COUNT_KEY, acknowledgedReadCount);
+        }
+        while (!unacknowledged.isEmpty() && unacknowledged.peek().readCount() <= acknowledgedReadCount) {
+            acknowledgedWritten = unacknowledged.poll().written();
+        }
+        executionContext.putLong(WRITTEN, acknowledgedWritten);
+    }
+
+    @Override
+    public void beforeStep(@NonNull StepExecution stepExecution) {
+        redshiftWriter.beforeStep(stepExecution);
+        openSearchWriter.beforeStep(stepExecution);
+    }
+
+    @Override
+    public void write(@NonNull Chunk<? extends StockData> chunk) throws Exception {
+        if (openSearchFailure == null) {
+            try {
+                openSearchWriter.write(chunk);
+            } catch (RuntimeException e) {
+                openSearchFailure = e;
+                logger.error("OpenSearch sink failed, writing the rest of the partition to Redshift only", e);
+            }
+        }
+        long from = written;
+        written += chunk.size();
+        if (written <= redshiftWritten) {
+            return;
+        }
+        if (from < redshiftWritten) {
+            List<? extends StockData> items = chunk.getItems();
+            chunk = new Chunk<>(items.subList((int) (redshiftWritten - from), items.size()));
+        }
+        redshiftWriter.write(chunk);
+    }
+
+    @Override
+    public ExitStatus afterStep(@NonNull StepExecution stepExecution) {
+        Throwable pendingFailure = openSearchWriter.awaitPending();
+        Throwable failure = openSearchFailure != null ? openSearchFailure : pendingFailure;
+        if (failure == null) {
+            return stepExecution.getExitStatus();
+        }
+        ExecutionContext context = stepExecution.getExecutionContext();
+        long committed = context.getLong(REDSHIFT_WRITTEN, 0);
+        context.putLong(WRITTEN, 0);
+        context.putInt(DailyAdjustedCsvReader.READ_COUNT_KEY, 0);
+        logger.error("OpenSearch sink of {} failed; a restart replays the partition to OpenSearch and skips the {} rows already in Redshift",
+                stepExecution.getStepName(), committed, failure);
+        stepExecution.setStatus(BatchStatus.FAILED);
+        stepExecution.addFailureException(failure);
+        return ExitStatus.FAILED;
+    }
+
+    private record WrittenPosition(int readCount, long written) {
+    }
+}
@@ -0,0 +1,47 @@
+package com.ingestion.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.time.Instant;
+
+/**
+ * Overwrites the S3 object at {@code ingestion.completion-marker-key} after every completed run, so readers of
+ * {@code stock_data} such as the search Lambda can tell from its ETag that their cached results are stale.
+ * A blank key disables the marker.
+ */
+@Component
+public class IngestionCompletionMarker {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionCompletionMarker.class);
+
+    private final S3Client s3Client;
+    private final String s3Bucket;
+    private final String markerKey;
+
+    public IngestionCompletionMarker(S3Client s3Client,
+                                     @Value("${aws.s3.bucket}") String s3Bucket,
+                                     @Value("${ingestion.completion-marker-key:markers/ingestion-completed}") String markerKey) {
+        this.s3Client = s3Client;
+        this.s3Bucket = s3Bucket;
+        this.markerKey = markerKey;
+    }
+
+    public void publish(long jobInstanceId) {
+        if (markerKey.isBlank()) {
+            return;
+        }
+        String content = "{\"jobInstanceId\":" + jobInstanceId + ",\"completedAt\":\"" + Instant.now() + "\"}";
+        try {
+            s3Client.putObject(b -> b.bucket(s3Bucket).key(markerKey).contentType("application/json"),
+                    RequestBody.fromString(content));
+        } catch (RuntimeException e) {
+            // Readers then keep serving cached results until they expire
+            logger.warn("Failed to write ingestion completion marker s3://{}/{}", s3Bucket, markerKey, e);
+        }
+    }
+}
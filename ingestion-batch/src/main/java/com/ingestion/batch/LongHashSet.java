@@ -0,0 +1,61 @@
+package com.ingestion.batch;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of {@code long} keys, so key checks over a chunk do not box a {@code Long} per row.
+ */
+final class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] slots;
+    private int size;
+    private boolean containsEmpty;
+
+    LongHashSet(int expectedSize) {
+        slots = new long[Math.max(16, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1)];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * Adds the key and returns {@code true} if it was not present yet.
+     */
+    boolean add(long key) {
+        if (key == EMPTY) {
+            boolean added = !containsEmpty;
+            containsEmpty = true;
+            return added;
+        }
+        int mask = slots.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (slots[slot] == key) {
+                return false;
+            }
+            if (slots[slot] == EMPTY) {
+                slots[slot] = key;
+                if (++size * 2 > slots.length) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        for (long key : old) {
+            if (key != EMPTY) {
+                add(key);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
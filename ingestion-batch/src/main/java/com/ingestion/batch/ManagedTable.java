@@ -0,0 +1,105 @@
+package com.ingestion.batch;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Physical design of a table that {@link CreateTableTasklet} creates and keeps in shape: its columns with their
+ * Redshift compression encodings, the distribution key and the compound sort key. Every managed table is keyed on
+ * the symbol first, so a symbol's rows live on one slice and a symbol/date range reads only its own blocks.
+ */
+record ManagedTable(String name, List<Column> columns, List<String> primaryKey, String distKey, List<String> sortKey) {
+
+    record Column(String name, String type, boolean notNull, String encoding) {
+    }
+
+    static final ManagedTable STOCK_DATA = new ManagedTable("stock_data", List.of(
+            // The leading sort key column stays uncompressed so range-restricted scans can skip blocks cheaply
+            new Column("stock_symbol", "VARCHAR(10)", true, "RAW"),
+            new Column("trade_date", "DATE", true, "AZ64"),
+            new Column("open_price", "DECIMAL(10,4)", false, "AZ64"),
+            new Column("high_price", "DECIMAL(10,4)", false, "AZ64"),
+            new Column("low_price", "DECIMAL(10,4)", false, "AZ64"),
+            new Column("close_price", "DECIMAL(10,4)", false, "AZ64"),
+            new Column("adjusted_close_price", "DECIMAL(10,4)", false, "AZ64"),
+            new Column("volume", "BIGINT", false, "AZ64"),
+            new Column("dividend_amount", "DECIMAL(10,4)", false, "AZ64"),
+            new Column("split_coefficient", "DECIMAL(10,4)", false, "AZ64")),
+            List.of("stock_symbol", "trade_date"), "stock_symbol", List.of("stock_symbol", "trade_date"));
+
+    static List<ManagedTable> all() {
+        List<ManagedTable> tables = new ArrayList<>();
+        tables.add(STOCK_DATA);
+        for (RollupPeriod period : RollupPeriod.values()) {
+            tables.add(rollup(period.table()));
+        }
+        return tables;
+    }
+
+    private static ManagedTable rollup(String name) {
+        return new ManagedTable(name, List.of(
+                new Column("stock_symbol", "VARCHAR(10)", true, "RAW"),
+                new Column("period_start", "DATE", true, "AZ64"),
+                new Column("first_date", "DATE", true, "AZ64"),
+                new Column("last_date", "DATE", true, "AZ64"),
+                new Column("open_price", "DECIMAL(10,4)", false, "AZ64"),
+                new Column("high_price", "DECIMAL(10,4)", false, "AZ64"),
+                new Column("low_price", "DECIMAL(10,4)", false, "AZ64"),
+                new Column("close_price", "DECIMAL(10,4)", false, "AZ64"),
+                new Column("avg_close_price", "DECIMAL(10,4)", false, "AZ64"),
+                new Column("volume", "BIGINT", false, "AZ64"),
+                new Column("trading_days", "INTEGER", false, "AZ64")),
+                List.of("stock_symbol", "period_start"), "stock_symbol", List.of("stock_symbol", "period_start"));
+    }
+
+    /**
+     * Whether the template's database is Redshift rather than a local stand-in without its physical design.
+     */
+    static boolean isRedshift(JdbcTemplate jdbcTemplate) {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        return product != null && product.toLowerCase().contains("redshift");
+    }
+
+    /**
+     * {@code CREATE TABLE} statement for the given table name; the encodings, distribution and sort key are only
+     * declared on Redshift.
+     */
+    String createSql(String tableName, boolean redshift) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(tableName).append(" (\n");
+        for (Column column : columns) {
+            sql.append("    ").append(column.name()).append(' ').append(column.type());
+            if (column.notNull()) {
+                sql.append(" NOT NULL");
+            }
+            if (redshift) {
+                sql.append(" ENCODE ").append(column.encoding());
+            }
+            sql.append(",\n");
+        }
+        sql.append("    PRIMARY KEY (").append(String.join(", ", primaryKey)).append(")\n)");
+        if (redshift) {
+            sql.append("\nDISTSTYLE KEY DISTKEY (").append(distKey).append(")")
+                    .append("\nCOMPOUND SORTKEY (").append(String.join(", ", sortKey)).append(")");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Expected {@code pg_table_def} values per column: encoding, whether it is the distribution key and its sort key
+     * position (0 when not part of the sort key).
+     */
+    Map<String, String> expectedLayout() {
+        Map<String, String> layout = new LinkedHashMap<>();
+        for (Column column : columns) {
+            String encoding = column.encoding().equals("RAW") ? "none" : column.encoding().toLowerCase();
+            layout.put(column.name(), encoding + "," + column.name().equals(distKey) + "," + (sortKey.indexOf(column.name()) + 1));
+        }
+        return layout;
+    }
+}
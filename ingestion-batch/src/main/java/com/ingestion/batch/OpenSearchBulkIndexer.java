@@ -0,0 +1,185 @@
+package com.ingestion.batch;
+
+import jakarta.annotation.PreDestroy;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.opensearch._types.ErrorCause;
+import org.opensearch.client.opensearch._types.OpenSearchException;
+import org.opensearch.client.opensearch.core.BulkRequest;
+import org.opensearch.client.opensearch.core.BulkResponse;
+import org.opensearch.client.opensearch.core.bulk.BulkOperation;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends bulk requests to OpenSearch asynchronously. At most {@code max-in-flight} requests are outstanding
+ * across all writers; once that many are in flight, {@link #submit} blocks, which holds back the chunk loop
+ * until the cluster catches up.
+ * <p>
+ * Each item of a bulk response is inspected. Items rejected because the cluster is overloaded (429,
+ * {@code es_rejected_execution_exception}) are resent on their own after an exponential backoff with full
+ * jitter; items that fail for any other reason, or are still rejected after {@code max-retries}, go to the
+ * {@link OpenSearchDeadLetterSink}. A request keeps its in-flight slot while it is being retried.
+ */
+@Component
+public class OpenSearchBulkIndexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenSearchBulkIndexer.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final OpenSearchAsyncClient openSearchClient;
+    private final OpenSearchDeadLetterSink deadLetterSink;
+    private final Semaphore inFlight;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    // Handles responses off the HTTP client's event loop, since dead-lettering may block on S3, and runs retries
+    private final ScheduledExecutorService callbackExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "opensearch-bulk-callback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OpenSearchBulkIndexer(OpenSearchAsyncClient openSearchClient,
+                                 OpenSearchDeadLetterSink deadLetterSink,
+                                 @Value("${aws.opensearch.bulk.max-in-flight:4}") int maxInFlight,
+                                 @Value("${aws.opensearch.bulk.max-retries:5}") int maxRetries,
+                                 @Value("${aws.opensearch.bulk.initial-backoff-ms:200}") long initialBackoffMillis,
+                                 @Value("${aws.opensearch.bulk.max-backoff-ms:30000}") long maxBackoffMillis) {
+        this.openSearchClient = openSearchClient;
+        this.deadLetterSink = deadLetterSink;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Completes once every document has been indexed or dead-lettered, and exceptionally only when a request
+     * as a whole could not be delivered. {@code documents} holds the source document of each operation, in
+     * the same order, for the dead-letter records.
+     */
+    public CompletableFuture<Void> submit(List<BulkOperation> bulkOperations, List<?> documents) {
+        return submit(bulkOperations, documents, null);
+    }
+
+    /**
+     * Like {@link #submit(List, List)}, but waits at most {@code maxWait} for an in-flight slot and otherwise
+     * returns a future failed with a {@link TimeoutException}. A {@code null} wait blocks until a slot is free.
+     */
+    public CompletableFuture<Void> submit(List<BulkOperation> bulkOperations, List<?> documents, Duration maxWait) {
+        try {
+            if (maxWait == null) {
+                inFlight.acquire();
+            } else if (!inFlight.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                return CompletableFuture.failedFuture(new TimeoutException(
+                        "No OpenSearch bulk request slot became free within " + maxWait.toMillis() + " ms"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        send(bulkOperations, documents, 0, done);
+        return done.whenComplete((ignored, error) -> inFlight.release());
+    }
+
+    private void send(List<BulkOperation> bulkOperations, List<?> documents, int attempt, CompletableFuture<Void> done) {
+        CompletableFuture<BulkResponse> response;
+        try {
+            response = openSearchClient.bulk(new BulkRequest.Builder()
+                    .operations(bulkOperations)
+                    .build());
+        } catch (IOException | RuntimeException e) {
+            done.completeExceptionally(e);
+            return;
+        }
+        response.whenCompleteAsync((bulkResponse, error) -> {
+            try {
+                if (error == null) {
+                    handleResponse(bulkOperations, documents, bulkResponse, attempt, done);
+                } else if (isRejected(error) && attempt < maxRetries) {
+                    logger.warn("Bulk request of {} documents rejected, retrying", bulkOperations.size());
+                    scheduleRetry(bulkOperations, documents, attempt, done);
+                } else {
+                    logger.error("Error while sending bulk request to OpenSearch", error);
+                    done.completeExceptionally(error);
+                }
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }, callbackExecutor);
+    }
+
+    private void handleResponse(List<BulkOperation> bulkOperations, List<?> documents, BulkResponse bulkResponse,
+                                int attempt, CompletableFuture<Void> done) {
+        if (!bulkResponse.errors()) {
+            logger.info("Successfully indexed {} documents in OpenSearch.", bulkOperations.size());
+            done.complete(null);
+            return;
+        }
+        List<BulkOperation> retries = new ArrayList<>();
+        List<Object> retryDocuments = new ArrayList<>();
+        List<Map<String, Object>> deadLetters = new ArrayList<>();
+        List<BulkResponseItem> items = bulkResponse.items();
+        for (int i = 0; i < items.size(); i++) {
+            BulkResponseItem item = items.get(i);
+            if (item.error() == null) {
+                continue;
+            }
+            if (isRejected(item.status(), item.error()) && attempt < maxRetries) {
+                retries.add(bulkOperations.get(i));
+                retryDocuments.add(documents.get(i));
+            } else {
+                deadLetters.add(OpenSearchDeadLetterSink.record(item.index(), item.id(), documents.get(i),
+                        item.status(), item.error().type(), item.error().reason()));
+            }
+        }
+        logger.info("Indexed {} of {} documents in OpenSearch, {} to retry, {} failed permanently.",
+                items.size() - retries.size() - deadLetters.size(), items.size(), retries.size(), deadLetters.size());
+        deadLetterSink.write(deadLetters);
+        if (retries.isEmpty()) {
+            done.complete(null);
+        } else {
+            scheduleRetry(retries, retryDocuments, attempt, done);
+        }
+    }
+
+    private void scheduleRetry(List<BulkOperation> bulkOperations, List<?> documents, int attempt,
+                               CompletableFuture<Void> done) {
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 20));
+        long delay = ThreadLocalRandom.current().nextLong(backoff + 1);
+        callbackExecutor.schedule(() -> send(bulkOperations, documents, attempt + 1, done), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isRejected(int status, ErrorCause error) {
+        return status == TOO_MANY_REQUESTS
+                || (error.type() != null && error.type().contains("rejected_execution_exception"));
+    }
+
+    private static boolean isRejected(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof OpenSearchException && ((OpenSearchException) cause).status() == TOO_MANY_REQUESTS;
+    }
+
+    @PreDestroy
+    public void close() {
+        callbackExecutor.shutdownNow();
+    }
+}
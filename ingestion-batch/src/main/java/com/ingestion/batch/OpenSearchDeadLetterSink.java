@@ -0,0 +1,114 @@
+package com.ingestion.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records documents that OpenSearch rejected permanently, one JSON line per document with the error that
+ * was returned for it. Records go to {@code s3://<bucket>/<dead-letter.prefix>} or, with
+ * {@code aws.opensearch.dead-letter.target=file}, are appended to {@code aws.opensearch.dead-letter.path}.
+ */
+@Component
+public class OpenSearchDeadLetterSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenSearchDeadLetterSink.class);
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(StockData.class, (JsonSerializer<StockData>) (stock, type, context) -> toJson(stock))
+            .disableHtmlEscaping()
+            .create();
+
+    private final S3Client s3Client;
+    private final String s3Bucket;
+    private final String target;
+    private final String s3Prefix;
+    private final Path filePath;
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    public OpenSearchDeadLetterSink(S3Client s3Client,
+                                    @Value("${aws.s3.bucket}") String s3Bucket,
+                                    @Value("${aws.opensearch.dead-letter.target:s3}") String target,
+                                    @Value("${aws.opensearch.dead-letter.prefix:dead-letter/opensearch/}") String s3Prefix,
+                                    @Value("${aws.opensearch.dead-letter.path:opensearch-dead-letter.jsonl}") String filePath) {
+        this.s3Client = s3Client;
+        this.s3Bucket = s3Bucket;
+        this.target = target;
+        this.s3Prefix = s3Prefix;
+        this.filePath = Path.of(filePath);
+    }
+
+    public static Map<String, Object> record(String index, String id, Object document, int status, String errorType, String reason) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("index", index);
+        record.put("id", id);
+        record.put("status", status);
+        record.put("errorType", errorType);
+        record.put("reason", reason);
+        record.put("document", document);
+        return record;
+    }
+
+    public void write(List<Map<String, Object>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Map<String, Object> record : records) {
+            lines.append(gson.toJson(record)).append('\n');
+        }
+        if ("file".equalsIgnoreCase(target)) {
+            appendToFile(lines.toString());
+        } else {
+            String key = s3Prefix + Instant.now().toEpochMilli() + "-" + UUID.randomUUID() + ".jsonl";
+            s3Client.putObject(b -> b.bucket(s3Bucket).key(key), RequestBody.fromString(lines.toString()));
+        }
+        logger.warn("Routed {} documents to the OpenSearch dead-letter {} ({} so far)",
+                records.size(), target, deadLettered.addAndGet(records.size()));
+    }
+
+    /**
+     * Records documents in the same shape they were sent to OpenSearch in, see {@link StockData#serialize}.
+     */
+    private static JsonObject toJson(StockData stock) {
+        JsonObject json = new JsonObject();
+        json.addProperty("stockSymbol", stock.getStockSymbol());
+        json.addProperty("tradeDate", stock.tradeLocalDate().toString());
+        json.addProperty("openPrice", StockData.toBigDecimal(stock.getOpenPrice()));
+        json.addProperty("highPrice", StockData.toBigDecimal(stock.getHighPrice()));
+        json.addProperty("lowPrice", StockData.toBigDecimal(stock.getLowPrice()));
+        json.addProperty("closePrice", StockData.toBigDecimal(stock.getClosePrice()));
+        json.addProperty("adjustedClosePrice", StockData.toBigDecimal(stock.getAdjustedClosePrice()));
+        json.addProperty("volume", stock.getVolume() == StockData.NULL_VALUE ? null : stock.getVolume());
+        json.addProperty("dividendAmount", StockData.toBigDecimal(stock.getDividendAmount()));
+        json.addProperty("splitCoefficient", StockData.toBigDecimal(stock.getSplitCoefficient()));
+        return json;
+    }
+
+    private synchronized void appendToFile(String lines) {
+        try {
+            Files.writeString(filePath, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write OpenSearch dead-letter records to " + filePath, e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.ingestion.batch;
+
+import lombok.NonNull;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.opensearch._types.Time;
+import org.opensearch.client.opensearch._types.mapping.DynamicMapping;
+import org.opensearch.client.opensearch._types.mapping.Property;
+import org.opensearch.client.opensearch._types.mapping.TypeMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Owns the layout of the OpenSearch index. An index template matching {@code aws.opensearch.index*} declares the
+ * mapping of {@link StockData} documents instead of leaving it to dynamic mapping: a keyword symbol, a date trade
+ * date, scaled floats at the precision of the Redshift columns and a long volume. Fields outside the mapping are
+ * not indexed, and {@code aws.opensearch.source-excludes} drops fields from the stored source.
+ * <p>
+ * For the duration of a load the index is not refreshed and has no replicas, so every document is indexed once
+ * on the primary only; {@link #finishLoad} restores the configured refresh interval and replica count, refreshes
+ * the index and optionally force-merges it. A job that fails before that point gets the settings restored by
+ * {@link #afterJob}. The template only applies to indices created after it, so an existing index keeps its mapping
+ * until a {@link BlueGreenDeployment} reload replaces it.
+ */
+@Component
+public class OpenSearchIndexManager implements JobExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenSearchIndexManager.class);
+    private static final double PRICE_SCALING_FACTOR = Math.pow(10, StockData.PRICE_SCALE);
+    private static final String LOAD_REFRESH_INTERVAL = "-1";
+    private static final String LOAD_REPLICAS = "0";
+
+    private final OpenSearchAsyncClient openSearchClient;
+    private final String index;
+    private final String templateName;
+    private final List<String> sourceExcludes;
+    private final String refreshInterval;
+    private final String replicas;
+    private final long forceMergeSegments;
+
+    public OpenSearchIndexManager(OpenSearchAsyncClient openSearchClient,
+                                  @Value("${aws.opensearch.index}") String index,
+                                  @Value("${aws.opensearch.template-name:stock-data}") String templateName,
+                                  @Value("${aws.opensearch.source-excludes:}") String sourceExcludes,
+                                  @Value("${aws.opensearch.refresh-interval:1s}") String refreshInterval,
+                                  @Value("${aws.opensearch.replicas:1}") String replicas,
+                                  @Value("${aws.opensearch.force-merge.max-segments:0}") long forceMergeSegments) {
+        this.openSearchClient = openSearchClient;
+        this.index = index;
+        this.templateName = templateName;
+        this.sourceExcludes = Arrays.stream(sourceExcludes.split(",")).map(String::trim).filter(field -> !field.isEmpty()).toList();
+        this.refreshInterval = refreshInterval;
+        this.replicas = replicas;
+        this.forceMergeSegments = forceMergeSegments;
+    }
+
+    /**
+     * Installs the index template, creates the index the job loads if it does not exist yet and switches it to load
+     * settings.
+     */
+    public void prepareLoad(String index) {
+        try {
+            openSearchClient.indices().putIndexTemplate(template -> template
+                    .name(templateName)
+                    .indexPatterns(this.index + "*")
+                    .template(mapping -> mapping
+                            .mappings(mappings())
+                            .settings(settings -> settings
+                                    .refreshInterval(time(refreshInterval))
+                                    .numberOfReplicas(replicas)))).join();
+            if (!openSearchClient.indices().exists(exists -> exists.index(index)).join().value()) {
+                openSearchClient.indices().create(create -> create.index(index)).join();
+                logger.info("Created OpenSearch index {} from template {}", index, templateName);
+            }
+            putSettings(index, LOAD_REFRESH_INTERVAL, LOAD_REPLICAS);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to prepare OpenSearch index " + index, e);
+        }
+    }
+
+    /**
+     * Restores the configured refresh interval and replicas, refreshes the index and, with
+     * {@code aws.opensearch.force-merge.max-segments} above zero, merges it down to that many segments per shard.
+     */
+    public void finishLoad(String index) {
+        try {
+            putSettings(index, refreshInterval, replicas);
+            openSearchClient.indices().refresh(refresh -> refresh.index(index)).join();
+            if (forceMergeSegments > 0) {
+                logger.info("Force-merging OpenSearch index {} to {} segments", index, forceMergeSegments);
+                openSearchClient.indices().forcemerge(merge -> merge.index(index).maxNumSegments(forceMergeSegments)).join();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to finish loading OpenSearch index " + index, e);
+        }
+    }
+
+    @Override
+    public void afterJob(@NonNull JobExecution jobExecution) {
+        if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
+            return;
+        }
+        String index = jobExecution.getExecutionContext().getString(BlueGreenDeployment.OPENSEARCH_INDEX, this.index);
+        try {
+            putSettings(index, refreshInterval, replicas);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to restore the settings of OpenSearch index {}", index, e);
+        }
+    }
+
+    private void putSettings(String index, String refresh, String replicaCount) throws IOException {
+        openSearchClient.indices().putSettings(put -> put
+                .index(index)
+                .settings(settings -> settings
+                        .refreshInterval(time(refresh))
+                        .numberOfReplicas(replicaCount))).join();
+        logger.info("Set OpenSearch index {} to refresh_interval={} and number_of_replicas={}", index, refresh, replicaCount);
+    }
+
+    private TypeMapping mappings() {
+        Map<String, Property> properties = new LinkedHashMap<>();
+        properties.put("stockSymbol", Property.of(p -> p.keyword(k -> k)));
+        properties.put("tradeDate", Property.of(p -> p.date(d -> d.format("strict_date"))));
+        for (String price : List.of("openPrice", "highPrice", "lowPrice", "closePrice", "adjustedClosePrice",
+                "dividendAmount", "splitCoefficient")) {
+            properties.put(price, Property.of(p -> p.scaledFloat(f -> f.scalingFactor(PRICE_SCALING_FACTOR))));
+        }
+        properties.put("volume", Property.of(p -> p.long_(l -> l)));
+        return TypeMapping.of(mapping -> {
+            mapping.dynamic(DynamicMapping.False).properties(properties);
+            if (!sourceExcludes.isEmpty()) {
+                mapping.source(source -> source.excludes(sourceExcludes));
+            }
+            return mapping;
+        });
+    }
+
+    private static Time time(String value) {
+        return Time.of(time -> time.time(value));
+    }
+}
@@ -1,93 +1,236 @@
 package com.ingestion.batch;
 
 import lombok.NonNull;
-import org.opensearch.client.opensearch.OpenSearchClient;
-import org.opensearch.client.opensearch._types.Refresh;
-import org.opensearch.client.opensearch.core.BulkRequest;
-import org.opensearch.client.opensearch.core.BulkResponse;
 import org.opensearch.client.opensearch.core.bulk.BulkOperation;
-import org.opensearch.client.transport.aws.AwsSdk2Transport;
-import org.opensearch.client.transport.aws.AwsSdk2TransportOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.item.Chunk;
-import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamWriter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.http.SdkHttpClient;
-import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
-import software.amazon.awssdk.regions.Region;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+/**
+ * Splits each chunk into bulk requests bounded by document count and estimated size, and hands them to
+ * {@link OpenSearchBulkIndexer} without waiting for the response. Failures of earlier requests fail the next
+ * chunk; whatever is still in flight when the step ends is awaited in {@link #afterStep}. Bulk requests do
+ * not refresh the index; the job refreshes it once after the ingestion step.
+ * <p>
+ * As a step's own writer, it keeps chunks from committing a reader position ahead of what OpenSearch has
+ * acknowledged: {@link #update} replaces the saved read count with the position after the last chunk whose bulk
+ * requests have all succeeded, and a step failing on a request still in flight saves that position too. A
+ * restarted step re-reads the chunks that were not acknowledged.
+ * <p>
+ * Documents are indexed under their natural key, so a rerun overwrites them instead of adding duplicates.
+ * With {@code aws.opensearch.skip-unchanged} they are sent as upserts instead: OpenSearch compares them with
+ * the stored source and skips the write (a {@code noop} result) when nothing has changed.
+ */
 @Component
-public class OpenSearchItemWriter implements ItemWriter<StockData> {
+@StepScope
+public class OpenSearchItemWriter implements ItemStreamWriter<StockData>, StepExecutionListener {
 
     private static final Logger logger = LoggerFactory.getLogger(OpenSearchItemWriter.class);
-    private static final int BATCH_SIZE = 100;
-    private final OpenSearchClient openSearchClient;
+    // Field names, punctuation and the bulk action line of a serialized StockData document
+    private static final int DOCUMENT_OVERHEAD_BYTES = 260;
+
+    private final OpenSearchBulkIndexer bulkIndexer;
     private final String openSearchIndex;
+    private final int maxBatchDocs;
+    private final long maxBatchBytes;
+    private final boolean skipUnchanged;
+    private final List<CompletableFuture<Void>> pending = new ArrayList<>();
+    // Chunks written since the last acknowledged reader position, oldest first; only tracked once opened
+    private final Deque<WrittenChunk> unacknowledged = new ArrayDeque<>();
+    private List<CompletableFuture<Void>> chunkRequests = new ArrayList<>();
+    private boolean tracking;
+    private int acknowledgedReadCount;
+    private Duration maxSubmitWait;
 
     public OpenSearchItemWriter(
-            @Value("${aws.opensearch.index}") String openSearchIndex,
-            @Value("${aws.opensearch.endpoint}") String openSearchEndpoint,
-            @Value("${aws.region}") String awsRegion) {
-
+            OpenSearchBulkIndexer bulkIndexer,
+            @Value("#{jobExecutionContext['" + BlueGreenDeployment.OPENSEARCH_INDEX + "'] ?: '${aws.opensearch.index}'}") String openSearchIndex,
+            @Value("${aws.opensearch.bulk.max-docs:1000}") int maxBatchDocs,
+            @Value("${aws.opensearch.bulk.max-bytes:5242880}") long maxBatchBytes,
+            @Value("${aws.opensearch.skip-unchanged:false}") boolean skipUnchanged) {
+        this.bulkIndexer = bulkIndexer;
         this.openSearchIndex = openSearchIndex;
-        AwsCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
-        SdkHttpClient httpClient = UrlConnectionHttpClient.create();
-        this.openSearchClient = new OpenSearchClient(
-                new AwsSdk2Transport(
-                        httpClient,
-                        openSearchEndpoint,
-                        "es",
-                        Region.of(awsRegion),
-                        AwsSdk2TransportOptions.builder()
-                                .setCredentials(credentialsProvider)
-                                .build()
-                )
-        );
+        this.maxBatchDocs = maxBatchDocs;
+        this.maxBatchBytes = maxBatchBytes;
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * Bounds how long {@link #write} may block waiting for a free bulk request slot; a chunk that cannot be
+     * sent in time fails the writer. By default it waits as long as it takes.
+     */
+    public void setMaxSubmitWait(Duration maxSubmitWait) {
+        this.maxSubmitWait = maxSubmitWait;
+    }
+
+    @Override
+    public void open(@NonNull ExecutionContext executionContext) {
+        tracking = true;
+        acknowledgedReadCount = executionContext.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY, 0);
+    }
+
+    /**
+     * Runs after the reader has saved its position for the chunk being committed, and moves that position back
+     * to the last one OpenSearch has acknowledged.
+     */
+    @Override
+    public void update(@NonNull ExecutionContext executionContext) {
+        if (!executionContext.containsKey(DailyAdjustedCsvReader.READ_COUNT_KEY)) {
+            return;
+        }
+        unacknowledged.add(new WrittenChunk(executionContext.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY), chunkRequests));
+        chunkRequests = new ArrayList<>();
+        acknowledge();
+        executionContext.putInt(DailyAdjustedCsvReader.READ_COUNT_KEY, acknowledgedReadCount);
+    }
+
+    private void acknowledge() {
+        while (!unacknowledged.isEmpty()) {
+            WrittenChunk oldest = unacknowledged.peek();
+            for (CompletableFuture<Void> request : oldest.requests()) {
+                if (!request.isDone() || request.isCompletedExceptionally()) {
+                    return;
+                }
+            }
+            acknowledgedReadCount = oldest.readCount();
+            unacknowledged.poll();
+        }
     }
 
     @Override
     public void write(@NonNull Chunk<? extends StockData> chunk) {
         List<BulkOperation> bulkOperations = new ArrayList<>();
+        List<StockData> documents = new ArrayList<>();
+        long batchBytes = 0;
 
         for (StockData stock : chunk) {
-            bulkOperations.add(new BulkOperation.Builder()
-                    .index(index -> index
+            bulkOperations.add(toBulkOperation(stock));
+            documents.add(stock);
+            batchBytes += estimateBytes(stock);
+            if (bulkOperations.size() >= maxBatchDocs || batchBytes >= maxBatchBytes) {
+                submit(bulkOperations, documents);
+                bulkOperations = new ArrayList<>();
+                documents = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if (!bulkOperations.isEmpty()) {
+            submit(bulkOperations, documents);
+        }
+        checkCompleted();
+    }
+
+    private void submit(List<BulkOperation> bulkOperations, List<StockData> documents) {
+        CompletableFuture<Void> request = bulkIndexer.submit(bulkOperations, documents, maxSubmitWait);
+        pending.add(request);
+        if (tracking) {
+            chunkRequests.add(request);
+        }
+    }
+
+    private BulkOperation toBulkOperation(StockData stock) {
+        String id = stock.naturalKey();
+        if (skipUnchanged) {
+            return new BulkOperation.Builder()
+                    .update(update -> update
                             .index(openSearchIndex)
+                            .id(id)
                             .document(stock)
-                    ).build());
-            if (bulkOperations.size() >= BATCH_SIZE) {
-                executeBulkInsert(bulkOperations);
-                bulkOperations.clear();
+                            .docAsUpsert(true)
+                    ).build();
+        }
+        return new BulkOperation.Builder()
+                .index(index -> index
+                        .index(openSearchIndex)
+                        .id(id)
+                        .document(stock)
+                ).build();
+    }
+
+    private void checkCompleted() {
+        Iterator<CompletableFuture<Void>> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            CompletableFuture<Void> response = iterator.next();
+            if (!response.isDone()) {
+                continue;
+            }
+            iterator.remove();
+            try {
+                response.join();
+            } catch (CompletionException e) {
+                throw new RuntimeException("Failed to index documents in OpenSearch", e.getCause());
             }
         }
-        if (!bulkOperations.isEmpty()) {
-            executeBulkInsert(bulkOperations);
+    }
+
+    @Override
+    public ExitStatus afterStep(@NonNull StepExecution stepExecution) {
+        Throwable failure = awaitPending();
+        if (failure == null) {
+            return stepExecution.getExitStatus();
         }
+        if (tracking) {
+            acknowledge();
+            stepExecution.getExecutionContext().putInt(DailyAdjustedCsvReader.READ_COUNT_KEY, acknowledgedReadCount);
+        }
+        logger.error("Bulk requests still in flight at the end of {} failed; a restart resumes after row {}",
+                stepExecution.getStepName(), acknowledgedReadCount, failure);
+        stepExecution.setStatus(BatchStatus.FAILED);
+        stepExecution.addFailureException(failure);
+        return ExitStatus.FAILED;
     }
 
-    private void executeBulkInsert(List<BulkOperation> bulkOperations) {
+    /**
+     * Waits for every bulk request that is still in flight and returns the first failure, if any.
+     */
+    Throwable awaitPending() {
         try {
-            BulkRequest bulkRequest = new BulkRequest.Builder()
-                    .operations(bulkOperations)
-                    .refresh(Refresh.True)
-                    .build();
-            BulkResponse response = openSearchClient.bulk(bulkRequest);
-            if (response.errors()) {
-                logger.error("Errors occurred while indexing documents in OpenSearch.");
-            } else {
-                logger.info("Successfully indexed {} documents in OpenSearch.", bulkOperations.size());
-            }
-        } catch (IOException e) {
-            logger.error("Error while sending bulk request to OpenSearch", e);
-            throw new RuntimeException("Failed to index documents in OpenSearch", e);
+            CompletableFuture.allOf(pending.toArray(CompletableFuture<?>[]::new)).join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        } finally {
+            pending.clear();
+        }
+    }
+
+    private static long estimateBytes(StockData stock) {
+        long bytes = DOCUMENT_OVERHEAD_BYTES + (stock.getStockSymbol() == null ? 0 : stock.getStockSymbol().length());
+        bytes += decimalBytes(stock.getOpenPrice()) + decimalBytes(stock.getHighPrice()) + decimalBytes(stock.getLowPrice())
+                + decimalBytes(stock.getClosePrice()) + decimalBytes(stock.getAdjustedClosePrice())
+                + decimalBytes(stock.getDividendAmount()) + decimalBytes(stock.getSplitCoefficient());
+        return bytes + 20; // volume
+    }
+
+    private static int decimalBytes(long scaled) {
+        if (scaled == StockData.NULL_VALUE) {
+            return 4;
+        }
+        int digits = 1;
+        for (long rest = Math.abs(scaled); rest >= 10; rest /= 10) {
+            digits++;
         }
+        return Math.max(digits, StockData.PRICE_SCALE + 1) + 2;
+    }
+
+    private record WrittenChunk(int readCount, List<CompletableFuture<Void>> requests) {
     }
 }
@@ -0,0 +1,170 @@
+package com.ingestion.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.pagination.sync.SdkIterable;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stages {@link StockData} rows as gzipped CSV part files under {@code <staging-prefix><jobInstanceId>/} for a
+ * later Redshift COPY. A part is named after the SHA-256 digest of its rows, so a chunk that is retried or re-read
+ * after a restart overwrites its earlier part instead of adding a second copy, while two different chunks never
+ * share a name.
+ * <p>
+ * Every row also carries the staging order of its part as an extra last column, increasing with each part staged,
+ * so that {@link RedshiftCopyTasklet} can keep the row staged last for a key, as INSERT keeps the row written last.
+ */
+@Component
+public class RedshiftCopyStager {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedshiftCopyStager.class);
+    private static final String MANIFEST_NAME = "load.manifest";
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final S3Client s3Client;
+    private final String s3Bucket;
+    private final String stagingPrefix;
+    // Microseconds since the epoch, made unique, so the order also holds across restarts of the job
+    private final AtomicLong lastStagedOrder = new AtomicLong();
+
+    public RedshiftCopyStager(S3Client s3Client,
+                              @Value("${aws.s3.bucket}") String s3Bucket,
+                              @Value("${aws.redshift.load.staging-prefix:staging/redshift/}") String stagingPrefix) {
+        this.s3Client = s3Client;
+        this.s3Bucket = s3Bucket;
+        this.stagingPrefix = stagingPrefix;
+    }
+
+    public void stage(long jobInstanceId, List<? extends StockData> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        MessageDigest digest = sha256();
+        long stagedOrder = lastStagedOrder.accumulateAndGet(System.currentTimeMillis() * 1000, (last, now) -> Math.max(last + 1, now));
+        byte[] part = toGzippedCsv(rows, stagedOrder, digest);
+        String partKey = String.format("%s%s_%s.csv.gz",
+                jobPrefix(jobInstanceId), rows.get(0).getStockSymbol(), HexFormat.of().formatHex(digest.digest()));
+        s3Client.putObject(b -> b.bucket(s3Bucket).key(partKey), RequestBody.fromBytes(part));
+    }
+
+    /**
+     * Writes a COPY manifest listing every part staged for the job instance and returns its S3 URL, or
+     * {@code null} when nothing was staged.
+     */
+    public String writeManifest(long jobInstanceId) {
+        List<String> parts = listStaged(jobInstanceId).stream()
+                .map(S3Object::key)
+                .filter(key -> key.endsWith(".csv.gz"))
+                .collect(Collectors.toList());
+        if (parts.isEmpty()) {
+            return null;
+        }
+        String entries = parts.stream()
+                .map(key -> String.format("{\"url\":\"s3://%s/%s\",\"mandatory\":true}", s3Bucket, key))
+                .collect(Collectors.joining(",\n"));
+        String manifestKey = jobPrefix(jobInstanceId) + MANIFEST_NAME;
+        s3Client.putObject(b -> b.bucket(s3Bucket).key(manifestKey),
+                RequestBody.fromString("{\"entries\":[\n" + entries + "\n]}"));
+        logger.info("Staged {} part files for COPY in s3://{}/{}", parts.size(), s3Bucket, manifestKey);
+        return "s3://" + s3Bucket + "/" + manifestKey;
+    }
+
+    public void deleteStaged(long jobInstanceId) {
+        List<ObjectIdentifier> keys = new ArrayList<>();
+        for (S3Object object : listStaged(jobInstanceId)) {
+            keys.add(ObjectIdentifier.builder().key(object.key()).build());
+            if (keys.size() == DELETE_BATCH_SIZE) {
+                deleteObjects(keys);
+                keys.clear();
+            }
+        }
+        if (!keys.isEmpty()) {
+            deleteObjects(keys);
+        }
+    }
+
+    private void deleteObjects(List<ObjectIdentifier> keys) {
+        s3Client.deleteObjects(b -> b.bucket(s3Bucket).delete(Delete.builder().objects(keys).quiet(true).build()));
+    }
+
+    private SdkIterable<S3Object> listStaged(long jobInstanceId) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(s3Bucket)
+                .prefix(jobPrefix(jobInstanceId))
+                .build();
+        return s3Client.listObjectsV2Paginator(request).contents();
+    }
+
+    private String jobPrefix(long jobInstanceId) {
+        return stagingPrefix + jobInstanceId + "/";
+    }
+
+    /**
+     * Serializes the rows as gzipped CSV ending in {@code stagedOrder}, feeding the rows without it to {@code digest}.
+     */
+    private byte[] toGzippedCsv(List<? extends StockData> rows, long stagedOrder, MessageDigest digest) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder line = new StringBuilder(128);
+        byte[] lineEnd = ("," + stagedOrder + "\n").getBytes(StandardCharsets.US_ASCII);
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            for (StockData data : rows) {
+                line.setLength(0);
+                line.append(data.getStockSymbol()).append(',').append(data.tradeLocalDate());
+                appendCsvValue(line.append(','), data.getOpenPrice(), true);
+                appendCsvValue(line.append(','), data.getHighPrice(), true);
+                appendCsvValue(line.append(','), data.getLowPrice(), true);
+                appendCsvValue(line.append(','), data.getClosePrice(), true);
+                appendCsvValue(line.append(','), data.getAdjustedClosePrice(), true);
+                appendCsvValue(line.append(','), data.getVolume(), false);
+                appendCsvValue(line.append(','), data.getDividendAmount(), true);
+                appendCsvValue(line.append(','), data.getSplitCoefficient(), true);
+                byte[] row = line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+                digest.update(row);
+                gzip.write(row, 0, row.length - 1);
+                gzip.write(lineEnd);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stage rows for COPY", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void appendCsvValue(StringBuilder line, long value, boolean scaled) {
+        if (value == StockData.NULL_VALUE) {
+            line.append("\\N");
+        } else if (scaled) {
+            StockData.appendDecimal(line, value);
+        } else {
+            line.append(value);
+        }
+    }
+}
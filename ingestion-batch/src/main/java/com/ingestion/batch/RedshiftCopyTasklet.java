@@ -0,0 +1,142 @@
+package com.ingestion.batch;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.stream.Collectors;
+
+/**
+ * Loads every part staged by {@link RedshiftItemWriter} for the current job instance with a single COPY. The
+ * manifest is recorded in {@code stock_data_copy_log} in the same transaction as the COPY, so a restarted job
+ * never loads the same manifest twice.
+ * <p>
+ * The parts are copied into a temporary staging table, whose symbols and date ranges are recorded in
+ * {@code stock_data_rollup_pending} for {@link RollupTasklet}, and then moved into {@code stock_data} (or the
+ * shadow table of a {@link BlueGreenDeployment}) in the same transaction. With {@code aws.redshift.load.upsert}
+ * enabled they are merged: stored rows with a staged key are deleted, then one staged row per key is inserted, the
+ * one staged last by {@link RedshiftCopyStager}. That matches INSERT, where the chunk written last replaces the
+ * stored row; within one partition {@link RedshiftItemWriter} never stages a key twice.
+ */
+@Component
+public class RedshiftCopyTasklet implements Tasklet {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedshiftCopyTasklet.class);
+    private static final String COLUMNS = ManagedTable.STOCK_DATA.columns().stream()
+            .map(ManagedTable.Column::name)
+            .collect(Collectors.joining(", "));
+
+    private final JdbcTemplate redshiftJdbcTemplate;
+    private final RedshiftCopyStager copyStager;
+    @Value("${aws.redshift.roleArn}")
+    private String redshiftRoleArn;
+    @Value("${aws.region}")
+    private String awsRegion;
+    @Value("${aws.redshift.load.upsert:true}")
+    private boolean upsert;
+
+    public RedshiftCopyTasklet(@Qualifier("redshiftJdbcTemplate") JdbcTemplate redshiftJdbcTemplate,
+                               RedshiftCopyStager copyStager) {
+        this.redshiftJdbcTemplate = redshiftJdbcTemplate;
+        this.copyStager = copyStager;
+    }
+
+    @Override
+    public RepeatStatus execute(@NonNull StepContribution contribution, @NonNull ChunkContext chunkContext) {
+        JobExecution jobExecution = chunkContext.getStepContext().getStepExecution().getJobExecution();
+        long jobInstanceId = jobExecution.getJobInstance().getInstanceId();
+        String table = jobExecution.getExecutionContext().getString(BlueGreenDeployment.REDSHIFT_TABLE, "stock_data");
+        String manifestUrl = copyStager.writeManifest(jobInstanceId);
+        if (manifestUrl == null) {
+            return RepeatStatus.FINISHED;
+        }
+
+        Integer loaded = redshiftJdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM stock_data_copy_log WHERE manifest_url = ?", Integer.class, manifestUrl);
+        if (loaded != null && loaded > 0) {
+            logger.info("Manifest {} was already loaded, skipping COPY", manifestUrl);
+        } else {
+            redshiftJdbcTemplate.execute(stagingTableSql());
+            redshiftJdbcTemplate.execute(copySql("stock_data_staging", manifestUrl));
+            redshiftJdbcTemplate.update("""
+                        INSERT INTO stock_data_rollup_pending (stock_symbol, min_date, max_date)
+                        SELECT stock_symbol, MIN(trade_date), MAX(trade_date)
+                        FROM stock_data_staging
+                        GROUP BY stock_symbol;
+                    """);
+            if (upsert) {
+                mergeStaging(table);
+            } else {
+                redshiftJdbcTemplate.update("INSERT INTO " + table + " SELECT " + COLUMNS + " FROM stock_data_staging");
+            }
+            redshiftJdbcTemplate.execute("DROP TABLE stock_data_staging");
+            redshiftJdbcTemplate.update("INSERT INTO stock_data_copy_log (manifest_url) VALUES (?)", manifestUrl);
+            logger.info("Loaded {} into {}", manifestUrl, table);
+        }
+        // Staged parts are only removed once the COPY and its log entry are committed
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                copyStager.deleteStaged(jobInstanceId);
+            }
+        });
+        return RepeatStatus.FINISHED;
+    }
+
+    /**
+     * The columns of {@code stock_data} followed by the staging order written by {@link RedshiftCopyStager}.
+     */
+    private static String stagingTableSql() {
+        ManagedTable stockData = ManagedTable.STOCK_DATA;
+        String columns = stockData.columns().stream()
+                .map(column -> column.name() + " " + column.type())
+                .collect(Collectors.joining(", "));
+        return "CREATE TEMP TABLE stock_data_staging (" + columns + ", staged_order BIGINT) DISTKEY (" + stockData.distKey() + ")";
+    }
+
+    private String copySql(String table, String manifestUrl) {
+        return String.format("""
+                    COPY %s
+                    FROM '%s'
+                    IAM_ROLE '%s'
+                    MANIFEST
+                    FORMAT AS CSV
+                    GZIP
+                    COMPUPDATE OFF
+                    STATUPDATE OFF
+                    REGION '%s'
+                    DATEFORMAT 'YYYY-MM-DD';
+                """, table, manifestUrl, redshiftRoleArn, awsRegion);
+    }
+
+    private void mergeStaging(String table) {
+        int replaced = redshiftJdbcTemplate.update(String.format("""
+                    DELETE FROM %1$s
+                    USING stock_data_staging
+                    WHERE %1$s.stock_symbol = stock_data_staging.stock_symbol
+                      AND %1$s.trade_date = stock_data_staging.trade_date;
+                """, table));
+        // Different objects of the same symbol can stage the same key
+        int inserted = redshiftJdbcTemplate.update(String.format("""
+                    INSERT INTO %1$s
+                    SELECT %2$s
+                    FROM (
+                        SELECT *, ROW_NUMBER() OVER (PARTITION BY stock_symbol, trade_date ORDER BY staged_order DESC) AS key_row
+                        FROM stock_data_staging
+                    ) staged
+                    WHERE key_row = 1;
+                """, table, COLUMNS));
+        logger.info("Merged {} staged rows into {}, replacing {} stored rows", inserted, table, replaced);
+    }
+}
@@ -1,6 +1,9 @@
 package com.ingestion.batch;
 
 import lombok.NonNull;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.item.Chunk;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -8,19 +11,82 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
-import java.util.stream.Collectors;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Writes chunks to {@code stock_data}, or to the shadow table of a {@link BlueGreenDeployment}, either directly
+ * with a multi-row INSERT or by staging them in S3 for {@link RedshiftCopyTasklet}. In
+ * {@link RedshiftLoadMode#AUTO} the choice is made per partition from the size of its S3 object; without a
+ * partition (a whole-prefix read) AUTO means COPY.
+ * <p>
+ * Redshift does not enforce the primary key, so with {@code aws.redshift.load.upsert} enabled rows replace the
+ * ones already stored under the same symbol and trade date instead of duplicating them. Rows whose key was
+ * already written by this step are dropped before they reach Redshift; INSERT then deletes the stored rows of
+ * the chunk's keys in the chunk transaction before inserting, and {@link RedshiftCopyTasklet} merges the staged
+ * parts through a staging table.
+ * <p>
+ * INSERT also records the symbols and date range of every chunk in {@code stock_data_rollup_pending}, in the chunk
+ * transaction, for {@link RollupTasklet}; for COPY this is done by {@link RedshiftCopyTasklet}.
+ */
 @Component
-public class RedshiftItemWriter implements ItemWriter<StockData> {
+@StepScope
+public class RedshiftItemWriter implements ItemWriter<StockData>, StepExecutionListener {
+
+    private static final String INSERT_SQL = "INSERT INTO %s (stock_symbol, trade_date, open_price, high_price, low_price, close_price, adjusted_close_price, volume, dividend_amount, split_coefficient) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Keeps each statement under Redshift's limit of 32767 bind parameters
+    private static final int MAX_ROWS_PER_STATEMENT = 3000;
+    private static final Map<String, String> INSERT_SQL_BY_ROW_COUNT = new ConcurrentHashMap<>();
+    private static final String PENDING_ROLLUP_SQL = "INSERT INTO stock_data_rollup_pending (stock_symbol, min_date, max_date) VALUES ";
+    private static final String DELETE_SQL = "DELETE FROM %s WHERE stock_symbol = ? AND trade_date IN ";
+    private static final Map<String, String> DELETE_SQL_BY_DATE_COUNT = new ConcurrentHashMap<>();
 
     private final JdbcTemplate jdbcTemplate;
-    @Value("${aws.s3.bucket}")
-    private String s3Bucket;
-    @Value("${aws.redshift.roleArn}")
-    private String redshiftRoleArn;
+    private final String table;
+    private final RedshiftCopyStager copyStager;
+    private final RedshiftLoadMode loadMode;
+    private final boolean upsert;
+    // Keys written by this step, as symbol id << 32 | epoch day
+    private final LongHashSet writtenKeys = new LongHashSet(1024);
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private long jobInstanceId;
 
-    public RedshiftItemWriter(@Qualifier("redshiftJdbcTemplate") JdbcTemplate jdbcTemplate) {
+    public RedshiftItemWriter(@Qualifier("redshiftJdbcTemplate") JdbcTemplate jdbcTemplate,
+                              RedshiftCopyStager copyStager,
+                              @Value("${aws.redshift.load.mode:AUTO}") RedshiftLoadMode loadMode,
+                              @Value("${aws.redshift.load.copy-threshold-bytes:67108864}") long copyThresholdBytes,
+                              @Value("${aws.redshift.load.upsert:true}") boolean upsert,
+                              @Value("#{jobExecutionContext['" + BlueGreenDeployment.REDSHIFT_TABLE + "'] ?: 'stock_data'}") String table,
+                              @Value("#{stepExecutionContext['" + S3ObjectPartitioner.S3_OBJECT_SIZE + "']}") Long partitionObjectSize) {
         this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.copyStager = copyStager;
+        this.loadMode = resolveLoadMode(loadMode, copyThresholdBytes, partitionObjectSize);
+        this.upsert = upsert;
+    }
+
+    private static RedshiftLoadMode resolveLoadMode(RedshiftLoadMode loadMode, long copyThresholdBytes, Long partitionObjectSize) {
+        if (loadMode != RedshiftLoadMode.AUTO) {
+            return loadMode;
+        }
+        return partitionObjectSize == null || partitionObjectSize >= copyThresholdBytes
+                ? RedshiftLoadMode.COPY
+                : RedshiftLoadMode.INSERT;
+    }
+
+    @Override
+    public void beforeStep(@NonNull StepExecution stepExecution) {
+        this.jobInstanceId = stepExecution.getJobExecution().getJobInstance().getInstanceId();
     }
 
     @Override
@@ -28,47 +94,116 @@ public class RedshiftItemWriter implements ItemWriter<StockData> {
         if (chunk.isEmpty()) {
             return;
         }
-        String sql = "INSERT INTO stock_data (stock_symbol, trade_date, open_price, high_price, low_price, close_price, adjusted_close_price, volume, dividend_amount, split_coefficient) VALUES ";
-        String values = chunk.getItems().stream()
-                .map(data -> String.format(
-                        "('%s', '%s', %.4f, %.4f, %.4f, %.4f, %.4f, %d, %.4f, %.4f)",
-                        data.getStockSymbol(),
-                        data.getTradeDate(),
-                        data.getOpenPrice(),
-                        data.getHighPrice(),
-                        data.getLowPrice(),
-                        data.getClosePrice(),
-                        data.getAdjustedClosePrice(),
-                        data.getVolume(),
-                        data.getDividendAmount(),
-                        data.getSplitCoefficient()
-                ))
-                .collect(Collectors.joining(", "));
+        List<? extends StockData> items = upsert ? newKeys(chunk.getItems()) : chunk.getItems();
+        if (loadMode == RedshiftLoadMode.COPY) {
+            copyStager.stage(jobInstanceId, items);
+            return;
+        }
+        if (upsert) {
+            deleteStored(items);
+        }
+        for (int from = 0; from < items.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<? extends StockData> rows = items.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, items.size()));
+            jdbcTemplate.update(insertSql(table, rows.size()), ps -> bindRows(ps, rows));
+        }
+        recordPendingRollup(items);
+    }
 
-        // 🔹 3. Execute the batched insert statement
-        String finalSQL = sql + values + ";";
-        jdbcTemplate.execute(finalSQL);
+    /**
+     * Returns the rows whose key this step has not written yet, keeping the first row of each key. A failed chunk
+     * fails the step, so keys of a rolled back chunk never suppress rows of a later one.
+     */
+    private List<? extends StockData> newKeys(List<? extends StockData> items) {
+        List<StockData> rows = null;
+        for (int i = 0; i < items.size(); i++) {
+            StockData row = items.get(i);
+            int symbolId = symbolIds.computeIfAbsent(row.getStockSymbol(), symbol -> symbolIds.size());
+            boolean added = writtenKeys.add((long) symbolId << 32 | (row.getTradeEpochDay() & 0xffffffffL));
+            if (!added && rows == null) {
+                rows = new ArrayList<>(items.subList(0, i));
+            } else if (added && rows != null) {
+                rows.add(row);
+            }
+        }
+        return rows != null ? rows : items;
     }
 
-    /*
-    //Use COPY in case of large files.
-    @Override
-    public void write(@NonNull Chunk<? extends StockData> chunk) throws Exception {
-       StockData data =  chunk.getItems().get(0);
-       System.out.println("data"+ data);
-        String copySQL = String.format("""
-                    COPY stock_data
-                    FROM 's3://%s/stock-data/'
-                    IAM_ROLE '%s'
-                    FORMAT AS CSV
-                    IGNOREHEADER 1
-                    COMPUPDATE OFF
-                    STATUPDATE OFF
-                    REGION 'us-east-2'
-                    ACCEPTINVCHARS ' '
-                    DATEFORMAT 'YYYY-MM-DD';
-                """, s3Bucket, redshiftRoleArn);
+    /**
+     * Deletes the stored rows of the given keys, one statement per symbol and up to
+     * {@link #MAX_ROWS_PER_STATEMENT} trade dates.
+     */
+    private void deleteStored(List<? extends StockData> items) {
+        Map<String, List<java.sql.Date>> datesBySymbol = new LinkedHashMap<>();
+        for (StockData row : items) {
+            datesBySymbol.computeIfAbsent(row.getStockSymbol(), symbol -> new ArrayList<>())
+                    .add(java.sql.Date.valueOf(row.tradeLocalDate()));
+        }
+        datesBySymbol.forEach((symbol, dates) -> {
+            for (int from = 0; from < dates.size(); from += MAX_ROWS_PER_STATEMENT) {
+                List<java.sql.Date> batch = dates.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, dates.size()));
+                jdbcTemplate.update(deleteSql(table, batch.size()), ps -> {
+                    ps.setString(1, symbol);
+                    for (int i = 0; i < batch.size(); i++) {
+                        ps.setDate(i + 2, batch.get(i));
+                    }
+                });
+            }
+        });
+    }
+
+    private static String deleteSql(String table, int dateCount) {
+        return DELETE_SQL_BY_DATE_COUNT.computeIfAbsent(table + ':' + dateCount, key ->
+                String.format(DELETE_SQL, table) + "(" + String.join(", ", Collections.nCopies(dateCount, "?")) + ")");
+    }
+
+    private void recordPendingRollup(List<? extends StockData> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        // Chunks normally come from a single object and therefore a single symbol
+        Map<String, int[]> rangeBySymbol = new LinkedHashMap<>();
+        for (StockData row : items) {
+            int[] range = rangeBySymbol.computeIfAbsent(row.getStockSymbol(),
+                    symbol -> new int[]{row.getTradeEpochDay(), row.getTradeEpochDay()});
+            range[0] = Math.min(range[0], row.getTradeEpochDay());
+            range[1] = Math.max(range[1], row.getTradeEpochDay());
+        }
+        jdbcTemplate.update(PENDING_ROLLUP_SQL + String.join(", ", Collections.nCopies(rangeBySymbol.size(), "(?, ?, ?)")), ps -> {
+            int index = 1;
+            for (Map.Entry<String, int[]> range : rangeBySymbol.entrySet()) {
+                ps.setString(index++, range.getKey());
+                ps.setDate(index++, java.sql.Date.valueOf(LocalDate.ofEpochDay(range.getValue()[0])));
+                ps.setDate(index++, java.sql.Date.valueOf(LocalDate.ofEpochDay(range.getValue()[1])));
+            }
+        });
+    }
 
-        jdbcTemplate.execute(copySQL);
-    }*/
+    /**
+     * Full chunks always produce the same statement text, so the driver and Redshift can reuse the parsed
+     * statement and its compiled plan instead of planning a new literal for every chunk.
+     */
+    private static String insertSql(String table, int rowCount) {
+        return INSERT_SQL_BY_ROW_COUNT.computeIfAbsent(table + ':' + rowCount, key ->
+                String.format(INSERT_SQL, table) + String.join(", ", Collections.nCopies(rowCount, ROW_PLACEHOLDERS)));
+    }
+
+    private static void bindRows(PreparedStatement ps, List<? extends StockData> rows) throws SQLException {
+        int index = 1;
+        for (StockData data : rows) {
+            ps.setString(index++, data.getStockSymbol());
+            ps.setDate(index++, java.sql.Date.valueOf(data.tradeLocalDate()));
+            ps.setBigDecimal(index++, StockData.toBigDecimal(data.getOpenPrice()));
+            ps.setBigDecimal(index++, StockData.toBigDecimal(data.getHighPrice()));
+            ps.setBigDecimal(index++, StockData.toBigDecimal(data.getLowPrice()));
+            ps.setBigDecimal(index++, StockData.toBigDecimal(data.getClosePrice()));
+            ps.setBigDecimal(index++, StockData.toBigDecimal(data.getAdjustedClosePrice()));
+            if (data.getVolume() == StockData.NULL_VALUE) {
+                ps.setNull(index++, Types.BIGINT);
+            } else {
+                ps.setLong(index++, data.getVolume());
+            }
+            ps.setBigDecimal(index++, StockData.toBigDecimal(data.getDividendAmount()));
+            ps.setBigDecimal(index++, StockData.toBigDecimal(data.getSplitCoefficient()));
+        }
+    }
 }
@@ -0,0 +1,13 @@
+package com.ingestion.batch;
+
+/**
+ * How {@link RedshiftItemWriter} gets rows into {@code stock_data}.
+ */
+public enum RedshiftLoadMode {
+    /** Multi-row INSERT per chunk. */
+    INSERT,
+    /** Stage chunks as gzipped CSV parts in S3 and load them with a single COPY at the end of the job. */
+    COPY,
+    /** COPY for partitions whose S3 object is at least the configured threshold, INSERT otherwise. */
+    AUTO
+}
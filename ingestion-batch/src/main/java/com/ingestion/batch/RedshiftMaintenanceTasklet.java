@@ -0,0 +1,71 @@
+package com.ingestion.batch;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the {@link ManagedTable}s scannable after a load. Rows appended out of sort key order land in an unsorted
+ * region that range-restricted scans cannot skip, and large loads leave the planner statistics stale; a table is
+ * vacuumed once {@code svv_table_info} reports more than {@code ingestion.schema.vacuum-unsorted-pct} percent of
+ * it unsorted and analyzed once its statistics are more than {@code ingestion.schema.analyze-stats-off-pct}
+ * percent off.
+ * <p>
+ * {@code VACUUM} cannot run inside a transaction, so the step must not use the Redshift transaction manager. Nothing
+ * is done on databases other than Redshift.
+ */
+@Component
+public class RedshiftMaintenanceTasklet implements Tasklet {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedshiftMaintenanceTasklet.class);
+
+    private final JdbcTemplate redshiftJdbcTemplate;
+    private final double vacuumUnsortedPct;
+    private final double analyzeStatsOffPct;
+
+    public RedshiftMaintenanceTasklet(@Qualifier("redshiftJdbcTemplate") JdbcTemplate redshiftJdbcTemplate,
+                                      @Value("${ingestion.schema.vacuum-unsorted-pct:10}") double vacuumUnsortedPct,
+                                      @Value("${ingestion.schema.analyze-stats-off-pct:10}") double analyzeStatsOffPct) {
+        this.redshiftJdbcTemplate = redshiftJdbcTemplate;
+        this.vacuumUnsortedPct = vacuumUnsortedPct;
+        this.analyzeStatsOffPct = analyzeStatsOffPct;
+    }
+
+    @Override
+    public RepeatStatus execute(@NonNull StepContribution contribution, @NonNull ChunkContext chunkContext) {
+        if (!ManagedTable.isRedshift(redshiftJdbcTemplate)) {
+            return RepeatStatus.FINISHED;
+        }
+        List<String> tables = ManagedTable.all().stream().map(ManagedTable::name).toList();
+        String sql = "SELECT \"table\", COALESCE(unsorted, 0), COALESCE(stats_off, 0) FROM svv_table_info"
+                + " WHERE schema = current_schema() AND \"table\" IN ("
+                + String.join(", ", Collections.nCopies(tables.size(), "?")) + ")";
+        List<TableHealth> health = redshiftJdbcTemplate.query(sql,
+                (rs, rowNum) -> new TableHealth(rs.getString(1), rs.getDouble(2), rs.getDouble(3)), tables.toArray());
+        for (TableHealth table : health) {
+            if (table.unsorted() > vacuumUnsortedPct) {
+                logger.info("Vacuuming {}: {}% unsorted", table.name(), table.unsorted());
+                redshiftJdbcTemplate.execute("VACUUM SORT ONLY " + table.name() + " TO 99 PERCENT");
+            }
+            if (table.statsOff() > analyzeStatsOffPct) {
+                logger.info("Analyzing {}: statistics {}% off", table.name(), table.statsOff());
+                redshiftJdbcTemplate.execute("ANALYZE " + table.name());
+            }
+        }
+        return RepeatStatus.FINISHED;
+    }
+
+    private record TableHealth(String name, double unsorted, double statsOff) {
+    }
+}
@@ -0,0 +1,27 @@
+package com.ingestion.batch;
+
+/**
+ * Periods for which {@link RollupTasklet} keeps per-symbol OHLCV rollups of {@code stock_data}, one table each.
+ */
+public enum RollupPeriod {
+    WEEK("stock_data_weekly"),
+    MONTH("stock_data_monthly"),
+    YEAR("stock_data_yearly");
+
+    private final String table;
+
+    RollupPeriod(String table) {
+        this.table = table;
+    }
+
+    public String table() {
+        return table;
+    }
+
+    /**
+     * The {@code DATE_TRUNC} date part of the period.
+     */
+    public String datePart() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,71 @@
+package com.ingestion.batch;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Brings the {@link RollupPeriod} tables up to date with {@code stock_data} once it is loaded. The Redshift load
+ * records the symbol and date range of what it wrote in {@code stock_data_rollup_pending}; only the periods touching
+ * one of those ranges are deleted and aggregated again, and the pending ranges are cleared in the same transaction.
+ * Ranges left by a failed run are therefore picked up by the next one.
+ */
+@Component
+public class RollupTasklet implements Tasklet {
+
+    private static final Logger logger = LoggerFactory.getLogger(RollupTasklet.class);
+
+    // A period is touched when it starts between the period of a pending range's first date and its last date
+    private static final String TOUCHED = """
+                EXISTS (
+                    SELECT 1 FROM stock_data_rollup_pending pending
+                    WHERE pending.stock_symbol = %1$s.stock_symbol
+                      AND %2$s BETWEEN CAST(DATE_TRUNC('%3$s', pending.min_date) AS DATE) AND pending.max_date
+                )""";
+
+    private final JdbcTemplate redshiftJdbcTemplate;
+
+    public RollupTasklet(@Qualifier("redshiftJdbcTemplate") JdbcTemplate redshiftJdbcTemplate) {
+        this.redshiftJdbcTemplate = redshiftJdbcTemplate;
+    }
+
+    @Override
+    public RepeatStatus execute(@NonNull StepContribution contribution, @NonNull ChunkContext chunkContext) {
+        Integer pending = redshiftJdbcTemplate.queryForObject("SELECT COUNT(*) FROM stock_data_rollup_pending", Integer.class);
+        if (pending == null || pending == 0) {
+            return RepeatStatus.FINISHED;
+        }
+        for (RollupPeriod period : RollupPeriod.values()) {
+            String part = period.datePart();
+            String table = period.table();
+            int deleted = redshiftJdbcTemplate.update("DELETE FROM " + table + " WHERE "
+                    + String.format(TOUCHED, table, table + ".period_start", part));
+            int inserted = redshiftJdbcTemplate.update(String.format("""
+                        INSERT INTO %1$s (stock_symbol, period_start, first_date, last_date, open_price, high_price,
+                                          low_price, close_price, avg_close_price, volume, trading_days)
+                        SELECT stock_symbol, period_start, MIN(trade_date), MAX(trade_date),
+                               MAX(CASE WHEN first_day = 1 THEN open_price END), MAX(high_price), MIN(low_price),
+                               MAX(CASE WHEN last_day = 1 THEN close_price END), AVG(close_price), SUM(volume), COUNT(*)
+                        FROM (
+                            SELECT stock_symbol, trade_date, open_price, high_price, low_price, close_price, volume,
+                                   CAST(DATE_TRUNC('%2$s', trade_date) AS DATE) AS period_start,
+                                   ROW_NUMBER() OVER (PARTITION BY stock_symbol, DATE_TRUNC('%2$s', trade_date) ORDER BY trade_date) AS first_day,
+                                   ROW_NUMBER() OVER (PARTITION BY stock_symbol, DATE_TRUNC('%2$s', trade_date) ORDER BY trade_date DESC) AS last_day
+                            FROM stock_data
+                            WHERE %3$s
+                        ) period_rows
+                        GROUP BY stock_symbol, period_start;
+                    """, table, part, String.format(TOUCHED, "stock_data", "CAST(DATE_TRUNC('" + part + "', stock_data.trade_date) AS DATE)", part)));
+            logger.info("Rolled up {} {} periods into {}, replacing {}", inserted, part, table, deleted);
+        }
+        redshiftJdbcTemplate.update("DELETE FROM stock_data_rollup_pending");
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -1,96 +1,234 @@
 package com.ingestion.batch;
 
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.item.ExecutionContext;
-import org.springframework.batch.item.ItemReader;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.S3Object;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
+/**
+ * Reads {@link StockData} rows from CSV objects in S3, plain or compressed (see {@link S3ObjectEncoding}). When
+ * the step runs as a partition of {@link S3ObjectPartitioner} it reads the single object, or byte range of an
+ * object, assigned to it and saves its position in the step execution context, so a restarted partition resumes
+ * where it stopped. A byte range is read with a ranged GET starting one byte before the range; the reader then
+ * owns every line that starts inside the range, reading the last one past the range end, so the splits of an
+ * object together yield exactly its rows. Ranged reads require the object's ETag to be unchanged. Otherwise it
+ * reads every new or changed object under the prefix in turn (every object when the job runs with
+ * {@code fullRefresh=true}). The watermark of each object that is read to the end is saved in the step execution
+ * context when the step ends, for the {@link S3ObjectWatermarkStore} to persist once the job completes.
+ */
 @Component
-public class S3CsvItemReader implements ItemReader<StockData> {
+@StepScope
+public class S3CsvItemReader implements ItemStreamReader<StockData>, StepExecutionListener {
+
+    // Watermarks of the objects read to the end by the step
+    static final String WATERMARKS = "s3CsvItemReader.watermarks";
+
+    private static final Logger logger = LoggerFactory.getLogger(S3CsvItemReader.class);
 
     private final S3Client s3Client;
-    private final Queue<String> fileQueue = new LinkedList<>();
-    private final String s3Bucket = "<Your s3 bucket name>";
-    private final String s3Prefix = "stock-data/";
-    private FlatFileItemReader<StockData> csvReader;
+    private final Queue<S3Object> fileQueue = new LinkedList<>();
+    private final ArrayList<S3ObjectWatermarkStore.Watermark> completedObjects = new ArrayList<>();
+    private final String s3Bucket;
+    private final String s3Prefix;
+    private final String partitionKey;
+    private final String partitionETag;
+    private final Long partitionLastModified;
+    private final Long partitionRangeStart;
+    private final Long partitionRangeEnd;
+    private final S3ObjectWatermarkStore watermarkStore;
+    private final boolean fullRefresh;
+    private final int readBufferSize;
+    private final int prefetchObjects;
+    private final long prefetchMaxBytes;
+    private Iterator<ListObjectsV2Response> listingPages;
+    private S3ObjectPrefetcher prefetcher;
+    private DailyAdjustedCsvReader csvReader;
+    private S3Object currentFile;
 
-    public S3CsvItemReader(S3Client s3Client) {
+    public S3CsvItemReader(S3Client s3Client,
+                           @Value("${aws.s3.bucket}") String s3Bucket,
+                           @Value("${aws.s3.prefix}") String s3Prefix,
+                           @Value("#{stepExecutionContext['" + S3ObjectPartitioner.S3_KEY + "']}") String partitionKey,
+                           @Value("#{stepExecutionContext['" + S3ObjectPartitioner.S3_ETAG + "']}") String partitionETag,
+                           @Value("#{stepExecutionContext['" + S3ObjectPartitioner.S3_LAST_MODIFIED + "']}") Long partitionLastModified,
+                           @Value("#{stepExecutionContext['" + S3ObjectPartitioner.S3_RANGE_START + "']}") Long partitionRangeStart,
+                           @Value("#{stepExecutionContext['" + S3ObjectPartitioner.S3_RANGE_END + "']}") Long partitionRangeEnd,
+                           S3ObjectWatermarkStore watermarkStore,
+                           @Value("#{jobParameters['" + BatchJobRunner.FULL_REFRESH + "']}") String fullRefresh,
+                           @Value("${aws.s3.read-buffer-size:65536}") int readBufferSize,
+                           @Value("${aws.s3.prefetch.objects:4}") int prefetchObjects,
+                           @Value("${aws.s3.prefetch.max-bytes:134217728}") long prefetchMaxBytes) {
         this.s3Client = s3Client;
-        loadFileList();
+        this.s3Bucket = s3Bucket;
+        this.s3Prefix = s3Prefix;
+        this.partitionKey = partitionKey;
+        this.partitionETag = partitionETag;
+        this.partitionLastModified = partitionLastModified;
+        this.partitionRangeStart = partitionRangeStart;
+        this.partitionRangeEnd = partitionRangeEnd;
+        this.watermarkStore = watermarkStore;
+        this.fullRefresh = Boolean.parseBoolean(fullRefresh);
+        this.readBufferSize = readBufferSize;
+        this.prefetchObjects = prefetchObjects;
+        this.prefetchMaxBytes = prefetchMaxBytes;
+    }
+
+    static boolean isCsvObject(String key) {
+        return S3ObjectEncoding.fromKey(key) != null;
+    }
+
+    @Override
+    public void open(@NonNull ExecutionContext executionContext) {
+        if (partitionKey != null) {
+            if (partitionRangeStart == null) {
+                logger.info("Processing file: {}", partitionKey);
+                csvReader = createCsvReader(partitionKey, s3Client.getObject(b -> b.bucket(s3Bucket).key(partitionKey)));
+            } else {
+                csvReader = createRangeReader();
+            }
+            csvReader.setSaveState(true);
+            csvReader.open(executionContext);
+        }
+    }
+
+    private DailyAdjustedCsvReader createRangeReader() {
+        logger.info("Processing file: {} bytes {}-{}", partitionKey, partitionRangeStart, partitionRangeEnd);
+        // Starting one byte early lets the reader tell whether the range begins on a line boundary
+        long streamStart = Math.max(0, partitionRangeStart - 1);
+        InputStream content = s3Client.getObject(b -> b.bucket(s3Bucket).key(partitionKey)
+                .range("bytes=" + streamStart + "-")
+                .ifMatch(partitionETag));
+        return new DailyAdjustedCsvReader(partitionKey, extractStockSymbol(partitionKey), content, readBufferSize,
+                partitionRangeEnd - streamStart);
+    }
+
+    @Override
+    public void update(@NonNull ExecutionContext executionContext) {
+        if (partitionKey != null && csvReader != null) {
+            csvReader.update(executionContext);
+        }
     }
 
+    /**
+     * Tops up the file queue from the S3 listing, one page per call, until it holds the current file plus
+     * the ones to prefetch or the listing is exhausted. The listing is only started on the first read.
+     */
     private void loadFileList() {
-        ListObjectsV2Request request = ListObjectsV2Request.builder()
-                .bucket(s3Bucket)
-                .prefix(s3Prefix)
-                .build();
-
-        ListObjectsV2Response result = s3Client.listObjectsV2(request);
-        for (S3Object objectSummary : result.contents()) {
-            if (objectSummary.key().endsWith(".csv")) {
-                fileQueue.add(objectSummary.key());
+        if (listingPages == null) {
+            ListObjectsV2Request request = ListObjectsV2Request.builder()
+                    .bucket(s3Bucket)
+                    .prefix(s3Prefix)
+                    .build();
+            listingPages = s3Client.listObjectsV2Paginator(request).iterator();
+        }
+        while (fileQueue.size() <= prefetchObjects && listingPages.hasNext()) {
+            for (S3Object objectSummary : listingPages.next().contents()) {
+                if (isCsvObject(objectSummary.key()) && (fullRefresh || watermarkStore.isNewOrChanged(objectSummary))) {
+                    fileQueue.add(objectSummary);
+                }
             }
         }
     }
 
     @Override
     public StockData read() throws Exception {
-        if (csvReader == null || csvReader.read() == null) {
+        if (partitionKey != null) {
+            StockData item = csvReader.read();
+            if (item == null && partitionETag != null && completedObjects.isEmpty()) {
+                completedObjects.add(new S3ObjectWatermarkStore.Watermark(
+                        partitionKey, partitionETag, Instant.ofEpochMilli(partitionLastModified)));
+            }
+            return item;
+        }
+        while (true) {
+            if (csvReader != null) {
+                StockData item = csvReader.read();
+                if (item != null) {
+                    return item;
+                }
+                csvReader.close(); // Releases the S3 connection
+                csvReader = null;
+                completedObjects.add(new S3ObjectWatermarkStore.Watermark(
+                        currentFile.key(), currentFile.eTag(), currentFile.lastModified()));
+            }
+            loadFileList();
             if (fileQueue.isEmpty()) {
                 return null; // No more files left to process
             }
-            String nextFile = fileQueue.poll();
-            System.out.println("Processing file: " + nextFile);
-            csvReader = createCsvReader(nextFile);
+            S3Object nextFile = fileQueue.poll();
+            currentFile = nextFile;
+            logger.info("Processing file: {}", nextFile.key());
+            if (prefetcher == null) {
+                prefetcher = new S3ObjectPrefetcher(s3Client, s3Bucket, prefetchObjects, prefetchMaxBytes);
+            }
+            prefetcher.prefetch(List.copyOf(fileQueue));
+            csvReader = createCsvReader(nextFile.key(), prefetcher.open(nextFile));
+            csvReader.setSaveState(false);
             csvReader.open(new ExecutionContext());
         }
-        return csvReader.read();
     }
 
-    private FlatFileItemReader<StockData> createCsvReader(String fileName) {
-        byte[] s3Data = s3Client.getObjectAsBytes(b -> b.bucket(s3Bucket).key(fileName)).asByteArray();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(s3Data)));
-
-        FlatFileItemReader<StockData> fileReader = new FlatFileItemReader<>();
-        fileReader.setResource(new InputStreamResource(new ByteArrayInputStream(reader.lines().collect(java.util.stream.Collectors.joining("\n")).getBytes())));
-        fileReader.setLinesToSkip(1); // Skip CSV header
-
-        fileReader.setLineMapper(new DefaultLineMapper<>() {{
-            setLineTokenizer(new DelimitedLineTokenizer() {{
-                setNames("tradeDate", "openPrice", "highPrice", "lowPrice", "closePrice", "adjustedClosePrice", "volume", "dividendAmount", "splitCoefficient");
-            }});
-            setFieldSetMapper(fieldSet -> new StockData(
-                    extractStockSymbol(fileName),
-                    fieldSet.readDate("tradeDate", "yyyy-MM-dd"),
-                    fieldSet.readBigDecimal("openPrice"),
-                    fieldSet.readBigDecimal("highPrice"),
-                    fieldSet.readBigDecimal("lowPrice"),
-                    fieldSet.readBigDecimal("closePrice"),
-                    fieldSet.readBigDecimal("adjustedClosePrice"),
-                    fieldSet.readLong("volume"),
-                    fieldSet.readBigDecimal("dividendAmount"),
-                    fieldSet.readBigDecimal("splitCoefficient")
-            ));
-        }});
-
-        return fileReader;
+    @Override
+    public ExitStatus afterStep(@NonNull StepExecution stepExecution) {
+        if (!completedObjects.isEmpty()) {
+            stepExecution.getExecutionContext().put(WATERMARKS, new ArrayList<>(completedObjects));
+        }
+        return stepExecution.getExitStatus();
+    }
+
+    @Override
+    public void close() {
+        if (csvReader != null) {
+            csvReader.close();
+            csvReader = null;
+        }
+        if (prefetcher != null) {
+            prefetcher.close();
+            prefetcher = null;
+        }
+    }
+
+    /**
+     * Parses rows straight off the given S3 stream, which is either the object response or its prefetched
+     * copy, decompressing it on the fly when it is gzip or zstd. Only {@code readBufferSize} bytes of a
+     * streamed object are held in heap at a time, regardless of the object size.
+     */
+    private DailyAdjustedCsvReader createCsvReader(String fileName, InputStream content) {
+        try {
+            return new DailyAdjustedCsvReader(fileName, extractStockSymbol(fileName),
+                    S3ObjectEncoding.decode(fileName, content), readBufferSize);
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open s3 object " + fileName, e);
+        }
     }
 
     private String extractStockSymbol(String fileName) {
-        return fileName.replace("stock-data/daily_adjusted_", "").replace(".csv", "").toUpperCase();
+        String name = fileName.replace(s3Prefix + "daily_adjusted_", "");
+        S3ObjectEncoding encoding = S3ObjectEncoding.fromKey(name);
+        if (encoding != null) {
+            name = name.substring(0, name.length() - encoding.extension().length());
+        }
+        return name.toUpperCase();
     }
 }
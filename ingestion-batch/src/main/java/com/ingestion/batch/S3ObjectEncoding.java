@@ -0,0 +1,87 @@
+package com.ingestion.batch;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Encodings of the CSV objects the reader accepts, recognised by key extension when listing and confirmed by
+ * the magic bytes at the start of the content when reading. Compressed objects are decompressed while they
+ * stream in and can only be read from the start, so they are never split into byte ranges, including compressed
+ * objects stored under a plain {@code .csv} key (see {@link #fromContent}).
+ * <p>
+ * Parquet is not supported; a Parquet file stored under a CSV key is rejected instead of being parsed as text.
+ */
+public enum S3ObjectEncoding {
+    PLAIN(".csv"),
+    GZIP(".csv.gz"),
+    ZSTD(".csv.zst");
+
+    private static final int GZIP_MAGIC = 0x1f8b;
+    private static final int ZSTD_MAGIC = 0x28b52ffd;
+    private static final int PARQUET_MAGIC = 0x50415231; // "PAR1"
+    private static final int DECOMPRESSION_BUFFER_SIZE = 65536;
+
+    private final String extension;
+
+    S3ObjectEncoding(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the encoding matching the key's extension, or {@code null} for keys the reader does not accept.
+     */
+    public static S3ObjectEncoding fromKey(String key) {
+        for (S3ObjectEncoding encoding : values()) {
+            if (key.endsWith(encoding.extension)) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public boolean isSplittable() {
+        return this == PLAIN;
+    }
+
+    /**
+     * Returns the encoding of content starting with the first {@code length} bytes of {@code head}, whatever the
+     * key says, or {@code null} for Parquet content.
+     */
+    public static S3ObjectEncoding fromContent(byte[] head, int length) {
+        int magic = length < 4 ? -1 : (head[0] & 0xff) << 24 | (head[1] & 0xff) << 16 | (head[2] & 0xff) << 8 | (head[3] & 0xff);
+        if (length >= 2 && ((head[0] & 0xff) << 8 | (head[1] & 0xff)) == GZIP_MAGIC) {
+            return GZIP;
+        }
+        if (magic == ZSTD_MAGIC) {
+            return ZSTD;
+        }
+        return magic == PARQUET_MAGIC ? null : PLAIN;
+    }
+
+    /**
+     * Wraps the content of the object in a decompressing stream chosen from its first bytes.
+     */
+    public static InputStream decode(String key, InputStream content) throws IOException {
+        PushbackInputStream input = new PushbackInputStream(content, 4);
+        byte[] head = new byte[4];
+        int length = input.readNBytes(head, 0, head.length);
+        input.unread(head, 0, length);
+        S3ObjectEncoding encoding = fromContent(head, length);
+        if (encoding == null) {
+            throw new IOException("s3 object " + key + " is a Parquet file, which the CSV reader does not support");
+        }
+        return switch (encoding) {
+            case GZIP -> new GZIPInputStream(input, DECOMPRESSION_BUFFER_SIZE);
+            case ZSTD -> new ZstdInputStream(input);
+            case PLAIN -> input;
+        };
+    }
+}
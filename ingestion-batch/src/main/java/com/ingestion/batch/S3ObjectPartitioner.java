@@ -0,0 +1,123 @@
+package com.ingestion.batch;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Emits one partition per CSV object under the configured prefix. Uncompressed objects larger than
+ * {@code ingestion.split-size-bytes}, by key and by their first bytes, are split into several partitions, each
+ * covering a byte range of the object ({@link #S3_RANGE_START} inclusive to {@link #S3_RANGE_END} exclusive), so
+ * that one huge object is parsed by several workers. Partition names are derived from the object key (and split
+ * index) so that, on restart, the job repository matches them to the previous run and skips the partitions that
+ * already completed. Unless the job runs with {@code fullRefresh=true}, objects whose ETag matches their watermark
+ * are left out.
+ */
+@Component
+@StepScope
+public class S3ObjectPartitioner implements Partitioner {
+
+    public static final String S3_KEY = "s3Key";
+    public static final String S3_OBJECT_SIZE = "s3ObjectSize";
+    public static final String S3_ETAG = "s3ETag";
+    public static final String S3_LAST_MODIFIED = "s3LastModified";
+    public static final String S3_RANGE_START = "s3RangeStart";
+    public static final String S3_RANGE_END = "s3RangeEnd";
+
+    private static final Logger logger = LoggerFactory.getLogger(S3ObjectPartitioner.class);
+
+    private final S3Client s3Client;
+    private final String s3Bucket;
+    private final String s3Prefix;
+    private final S3ObjectWatermarkStore watermarkStore;
+    private final boolean fullRefresh;
+    private final long splitSizeBytes;
+
+    public S3ObjectPartitioner(S3Client s3Client,
+                               @Value("${aws.s3.bucket}") String s3Bucket,
+                               @Value("${aws.s3.prefix}") String s3Prefix,
+                               S3ObjectWatermarkStore watermarkStore,
+                               @Value("#{jobParameters['" + BatchJobRunner.FULL_REFRESH + "']}") String fullRefresh,
+                               @Value("${ingestion.split-size-bytes:268435456}") long splitSizeBytes) {
+        this.s3Client = s3Client;
+        this.s3Bucket = s3Bucket;
+        this.s3Prefix = s3Prefix;
+        this.watermarkStore = watermarkStore;
+        this.fullRefresh = Boolean.parseBoolean(fullRefresh);
+        this.splitSizeBytes = splitSizeBytes;
+    }
+
+    @Override
+    @NonNull
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(s3Bucket)
+                .prefix(s3Prefix)
+                .build();
+
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        int unchanged = 0;
+        int splitObjects = 0;
+        for (S3Object object : s3Client.listObjectsV2Paginator(request).contents()) {
+            if (!S3CsvItemReader.isCsvObject(object.key())) {
+                continue;
+            }
+            if (!fullRefresh && !watermarkStore.isNewOrChanged(object)) {
+                unchanged++;
+                continue;
+            }
+            String name = object.key().substring(s3Prefix.length());
+            boolean splittable = S3ObjectEncoding.fromKey(object.key()).isSplittable();
+            if (!splittable || splitSizeBytes <= 0 || object.size() <= splitSizeBytes || !hasPlainContent(object)) {
+                partitions.put(name, objectContext(object));
+                continue;
+            }
+            int split = 0;
+            for (long start = 0; start < object.size(); start += splitSizeBytes) {
+                ExecutionContext context = objectContext(object);
+                context.putLong(S3_RANGE_START, start);
+                context.putLong(S3_RANGE_END, Math.min(start + splitSizeBytes, object.size()));
+                partitions.put(name + "#" + split++, context);
+            }
+            splitObjects++;
+        }
+        logger.info("Created {} partitions under s3://{}/{} ({} objects split into byte ranges), skipped {} unchanged objects",
+                partitions.size(), s3Bucket, s3Prefix, splitObjects, unchanged);
+        return partitions;
+    }
+
+    /**
+     * Checks the first bytes of an object stored under a plain key: a compressed object can only be decoded from
+     * its start, so it must not be split into byte ranges whatever its key says.
+     */
+    private boolean hasPlainContent(S3Object object) {
+        byte[] head = s3Client.getObjectAsBytes(b -> b.bucket(s3Bucket).key(object.key())
+                .range("bytes=0-3")
+                .ifMatch(object.eTag())).asByteArray();
+        S3ObjectEncoding encoding = S3ObjectEncoding.fromContent(head, head.length);
+        if (encoding != S3ObjectEncoding.PLAIN) {
+            logger.warn("s3://{}/{} is not plain text despite its key; reading it as a single partition", s3Bucket, object.key());
+        }
+        return encoding == S3ObjectEncoding.PLAIN;
+    }
+
+    private static ExecutionContext objectContext(S3Object object) {
+        ExecutionContext context = new ExecutionContext();
+        context.putString(S3_KEY, object.key());
+        context.putLong(S3_OBJECT_SIZE, object.size());
+        context.putString(S3_ETAG, object.eTag());
+        context.putLong(S3_LAST_MODIFIED, object.lastModified().toEpochMilli());
+        return context;
+    }
+}
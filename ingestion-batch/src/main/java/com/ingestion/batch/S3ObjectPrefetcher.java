@@ -0,0 +1,107 @@
+package com.ingestion.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Downloads upcoming S3 objects in the background while the current one is being parsed.
+ * At most {@code maxObjects} downloads are held at once and their combined size never exceeds
+ * {@code maxBytes}; objects that do not fit the budget are streamed on demand instead.
+ */
+class S3ObjectPrefetcher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3ObjectPrefetcher.class);
+
+    private final S3Client s3Client;
+    private final String s3Bucket;
+    private final int maxObjects;
+    private final long maxBytes;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<byte[]>> prefetched = new HashMap<>();
+    private long reservedBytes;
+
+    S3ObjectPrefetcher(S3Client s3Client, String s3Bucket, int maxObjects, long maxBytes) {
+        this.s3Client = s3Client;
+        this.s3Bucket = s3Bucket;
+        this.maxObjects = maxObjects;
+        this.maxBytes = maxBytes;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxObjects), runnable -> {
+            Thread thread = new Thread(runnable, "s3-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts downloading as many of the given objects as the object count and byte budget allow.
+     */
+    synchronized void prefetch(List<S3Object> upcoming) {
+        for (S3Object object : upcoming) {
+            if (prefetched.size() >= maxObjects) {
+                return;
+            }
+            if (prefetched.containsKey(object.key()) || reservedBytes + object.size() > maxBytes) {
+                continue;
+            }
+            reservedBytes += object.size();
+            prefetched.put(object.key(), CompletableFuture.supplyAsync(() ->
+                    s3Client.getObjectAsBytes(b -> b.bucket(s3Bucket).key(object.key())).asByteArray(), executor));
+        }
+    }
+
+    /**
+     * Returns the content of the object, from the prefetched copy when there is one. The prefetched bytes
+     * stay charged against the budget until the returned stream is closed.
+     */
+    InputStream open(S3Object object) {
+        CompletableFuture<byte[]> download;
+        synchronized (this) {
+            download = prefetched.remove(object.key());
+        }
+        if (download != null) {
+            try {
+                return new FilterInputStream(new ByteArrayInputStream(download.join())) {
+                    private boolean released;
+
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        if (!released) {
+                            released = true;
+                            release(object.size());
+                        }
+                    }
+                };
+            } catch (RuntimeException e) {
+                release(object.size());
+                logger.warn("Prefetch of {} failed, reading it directly: {}", object.key(), e.getMessage());
+            }
+        }
+        return s3Client.getObject(b -> b.bucket(s3Bucket).key(object.key()));
+    }
+
+    private synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        prefetched.values().forEach(download -> download.cancel(true));
+        prefetched.clear();
+        reservedBytes = 0;
+        executor.shutdownNow();
+    }
+}
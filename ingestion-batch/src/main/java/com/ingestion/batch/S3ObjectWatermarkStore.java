@@ -0,0 +1,101 @@
+package com.ingestion.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which S3 objects have been ingested, as key → ETag in the {@code ingestion_watermark} table, so an
+ * incremental run only picks up objects that are new or whose content changed. {@link S3CsvItemReader} saves the
+ * watermark of each object it reads to the end in the execution context of its step, and {@link #persist} collects
+ * them from every completed step of the job instance once every ingestion step has completed, including partitions
+ * that a restarted job skipped because an earlier execution completed them. An object from a failed run is
+ * therefore picked up again by the next one.
+ */
+@Component
+public class S3ObjectWatermarkStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3ObjectWatermarkStore.class);
+
+    private final JdbcTemplate redshiftJdbcTemplate;
+    private final JobExplorer jobExplorer;
+    private volatile Map<String, String> eTagsByKey;
+
+    public S3ObjectWatermarkStore(@Qualifier("redshiftJdbcTemplate") JdbcTemplate redshiftJdbcTemplate,
+                                  JobExplorer jobExplorer) {
+        this.redshiftJdbcTemplate = redshiftJdbcTemplate;
+        this.jobExplorer = jobExplorer;
+    }
+
+    public boolean isNewOrChanged(S3Object object) {
+        return !object.eTag().equals(loadETags().get(object.key()));
+    }
+
+    private Map<String, String> loadETags() {
+        if (eTagsByKey == null) {
+            synchronized (this) {
+                if (eTagsByKey == null) {
+                    Map<String, String> eTags = new ConcurrentHashMap<>();
+                    redshiftJdbcTemplate.query("SELECT s3_key, etag FROM ingestion_watermark",
+                            rs -> {
+                                eTags.put(rs.getString("s3_key"), rs.getString("etag"));
+                            });
+                    logger.info("Loaded {} ingestion watermarks", eTags.size());
+                    eTagsByKey = eTags;
+                }
+            }
+        }
+        return eTagsByKey;
+    }
+
+    /**
+     * Replaces the watermarks of every object read to the end by a completed step of the job instance. Meant to
+     * run inside the Redshift transaction of the final job step.
+     */
+    public void persist(JobInstance jobInstance) {
+        Map<String, Watermark> processed = new HashMap<>();
+        for (JobExecution jobExecution : jobExplorer.getJobExecutions(jobInstance)) {
+            for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+                Object watermarks = stepExecution.getExecutionContext().get(S3CsvItemReader.WATERMARKS);
+                if (stepExecution.getStatus() == BatchStatus.COMPLETED && watermarks instanceof List<?> list) {
+                    for (Object watermark : list) {
+                        processed.put(((Watermark) watermark).key(), (Watermark) watermark);
+                    }
+                }
+            }
+        }
+        if (processed.isEmpty()) {
+            return;
+        }
+        List<Object[]> keys = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (Watermark watermark : processed.values()) {
+            keys.add(new Object[]{watermark.key()});
+            rows.add(new Object[]{watermark.key(), watermark.eTag(), Timestamp.from(watermark.lastModified())});
+        }
+        redshiftJdbcTemplate.batchUpdate("DELETE FROM ingestion_watermark WHERE s3_key = ?", keys);
+        redshiftJdbcTemplate.batchUpdate(
+                "INSERT INTO ingestion_watermark (s3_key, etag, last_modified) VALUES (?, ?, ?)", rows);
+        logger.info("Recorded watermarks for {} S3 objects", rows.size());
+    }
+
+    record Watermark(String key, String eTag, Instant lastModified) implements Serializable {
+    }
+}
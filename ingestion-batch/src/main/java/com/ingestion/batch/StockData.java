@@ -1,26 +1,96 @@
 package com.ingestion.batch;
 
-import com.fasterxml.jackson.annotation.JsonFormat;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import jakarta.json.stream.JsonGenerator;
+import lombok.Value;
+import org.opensearch.client.json.JsonpMapper;
+import org.opensearch.client.json.JsonpSerializable;
 
 import java.math.BigDecimal;
-import java.util.Date;
-
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
-public class StockData {
-    private String stockSymbol;
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
-    private Date tradeDate;
-    private BigDecimal openPrice;
-    private BigDecimal highPrice;
-    private BigDecimal lowPrice;
-    private BigDecimal closePrice;
-    private BigDecimal adjustedClosePrice;
-    private Long volume;
-    private BigDecimal dividendAmount;
-    private BigDecimal splitCoefficient;
+import java.time.LocalDate;
+
+/**
+ * One daily row of a {@code daily_adjusted_*} file, held in primitives: prices are fixed-point longs scaled by
+ * {@link #PRICE_SCALE} decimal places (the scale of the {@code DECIMAL(10,4)} columns), the trade date is an
+ * epoch day and the symbol is interned, so a row costs a single small object. Missing values are stored as
+ * {@link #NULL_VALUE}.
+ */
+@Value
+public class StockData implements JsonpSerializable {
+
+    public static final int PRICE_SCALE = 4;
+    public static final long NULL_VALUE = Long.MIN_VALUE;
+
+    String stockSymbol;
+    int tradeEpochDay;
+    long openPrice;
+    long highPrice;
+    long lowPrice;
+    long closePrice;
+    long adjustedClosePrice;
+    long volume;
+    long dividendAmount;
+    long splitCoefficient;
+
+    public LocalDate tradeLocalDate() {
+        return LocalDate.ofEpochDay(tradeEpochDay);
+    }
+
+    /**
+     * Natural key matching the {@code (stock_symbol, trade_date)} primary key of {@code stock_data}.
+     */
+    public String naturalKey() {
+        return stockSymbol + "_" + tradeLocalDate();
+    }
+
+    public static BigDecimal toBigDecimal(long scaled) {
+        return scaled == NULL_VALUE ? null : BigDecimal.valueOf(scaled, PRICE_SCALE);
+    }
+
+    /**
+     * Appends a scaled price in plain decimal notation, e.g. {@code 1234500} as {@code 123.4500}.
+     */
+    public static StringBuilder appendDecimal(StringBuilder target, long scaled) {
+        if (scaled < 0) {
+            target.append('-');
+            scaled = -scaled;
+        }
+        long fraction = scaled % 10_000;
+        target.append(scaled / 10_000).append('.');
+        for (long digit = 1_000; digit > fraction && digit > 1; digit /= 10) {
+            target.append('0');
+        }
+        return target.append(fraction);
+    }
+
+    /**
+     * Writes the document sent to OpenSearch. The field names and formats are the ones the index was built
+     * with when rows were plain beans: decimal prices and a {@code yyyy-MM-dd} trade date.
+     */
+    @Override
+    public void serialize(JsonGenerator generator, JsonpMapper mapper) {
+        generator.writeStartObject();
+        generator.write("stockSymbol", stockSymbol);
+        generator.write("tradeDate", tradeLocalDate().toString());
+        writeDecimal(generator, "openPrice", openPrice);
+        writeDecimal(generator, "highPrice", highPrice);
+        writeDecimal(generator, "lowPrice", lowPrice);
+        writeDecimal(generator, "closePrice", closePrice);
+        writeDecimal(generator, "adjustedClosePrice", adjustedClosePrice);
+        if (volume == NULL_VALUE) {
+            generator.writeNull("volume");
+        } else {
+            generator.write("volume", volume);
+        }
+        writeDecimal(generator, "dividendAmount", dividendAmount);
+        writeDecimal(generator, "splitCoefficient", splitCoefficient);
+        generator.writeEnd();
+    }
+
+    private static void writeDecimal(JsonGenerator generator, String name, long scaled) {
+        if (scaled == NULL_VALUE) {
+            generator.writeNull(name);
+        } else {
+            generator.write(name, BigDecimal.valueOf(scaled, PRICE_SCALE));
+        }
+    }
 }
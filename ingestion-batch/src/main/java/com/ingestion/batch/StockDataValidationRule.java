@@ -0,0 +1,17 @@
+package com.ingestion.batch;
+
+/**
+ * Checks applied by {@link StockDataValidator}, in this order; a row is rejected by the first rule it fails.
+ */
+public enum StockDataValidationRule {
+    /** The stock symbol is present. */
+    SYMBOL,
+    /** Open, high, low and close are present, non-negative, and low &lt;= open, close &lt;= high. */
+    OHLC,
+    /** The volume is present and not negative. */
+    VOLUME,
+    /** The trade date lies within {@code ingestion.validation.min-date} and {@code max-date}. */
+    DATE_RANGE,
+    /** No earlier row of the same chunk has the same symbol and trade date. */
+    DUPLICATE_KEY
+}
@@ -0,0 +1,156 @@
+package com.ingestion.batch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.item.Chunk;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Validates each chunk right before it is written and removes the rows that fail one of the configured
+ * {@link StockDataValidationRule}s, so the writers only see valid rows. Rules are evaluated as plain checks
+ * over the whole chunk rather than by throwing per bad row. Rejections are counted per rule in the
+ * {@code ingestion.validation.rejected} meter and appended, with the rule that rejected them, to the reject
+ * file at {@code ingestion.validation.reject-path}. One instance serves every worker step concurrently.
+ */
+@Component
+public class StockDataValidator implements ItemWriteListener<StockData> {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockDataValidator.class);
+
+    private final Set<StockDataValidationRule> rules;
+    private final int minEpochDay;
+    private final Integer maxEpochDay;
+    private final Path rejectPath;
+    private final Map<StockDataValidationRule, Counter> rejectedCounters = new EnumMap<>(StockDataValidationRule.class);
+
+    public StockDataValidator(MeterRegistry meterRegistry,
+                              @Value("${ingestion.validation.rules:SYMBOL,OHLC,VOLUME,DATE_RANGE,DUPLICATE_KEY}") List<StockDataValidationRule> rules,
+                              @Value("${ingestion.validation.min-date:1990-01-01}") String minDate,
+                              @Value("${ingestion.validation.max-date:}") String maxDate,
+                              @Value("${ingestion.validation.reject-path:rejected-rows.csv}") String rejectPath) {
+        this.rules = rules.isEmpty() ? EnumSet.noneOf(StockDataValidationRule.class) : EnumSet.copyOf(rules);
+        this.minEpochDay = (int) LocalDate.parse(minDate).toEpochDay();
+        this.maxEpochDay = maxDate.isBlank() ? null : (int) LocalDate.parse(maxDate).toEpochDay();
+        this.rejectPath = Path.of(rejectPath);
+        for (StockDataValidationRule rule : StockDataValidationRule.values()) {
+            rejectedCounters.put(rule, meterRegistry.counter("ingestion.validation.rejected", "rule", rule.name()));
+        }
+    }
+
+    @Override
+    public void beforeWrite(@NonNull Chunk<? extends StockData> chunk) {
+        if (rules.isEmpty() || chunk.isEmpty()) {
+            return;
+        }
+        // Without a configured maximum, rows dated after today are rejected
+        int maxDay = maxEpochDay != null ? maxEpochDay : (int) LocalDate.now().toEpochDay();
+        LongHashSet keys = rules.contains(StockDataValidationRule.DUPLICATE_KEY) ? new LongHashSet(chunk.size()) : null;
+        Map<String, Integer> symbolIds = new HashMap<>();
+        StringBuilder rejects = null;
+        int rejected = 0;
+        int total = chunk.size();
+
+        for (Iterator<? extends StockData> rows = chunk.iterator(); rows.hasNext(); ) {
+            StockData row = rows.next();
+            StockDataValidationRule failed = firstFailedRule(row, maxDay);
+            if (failed == null && keys != null) {
+                int symbolId = symbolIds.computeIfAbsent(row.getStockSymbol(), symbol -> symbolIds.size());
+                if (!keys.add((long) symbolId << 32 | (row.getTradeEpochDay() & 0xffffffffL))) {
+                    failed = StockDataValidationRule.DUPLICATE_KEY;
+                }
+            }
+            if (failed == null) {
+                continue;
+            }
+            rows.remove();
+            rejectedCounters.get(failed).increment();
+            rejected++;
+            if (rejects == null) {
+                rejects = new StringBuilder();
+            }
+            appendReject(rejects, failed, row);
+        }
+        if (rejects != null) {
+            writeRejects(rejects.toString());
+            logger.warn("Rejected {} of {} rows of the chunk, see {}", rejected, total, rejectPath);
+        }
+    }
+
+    private StockDataValidationRule firstFailedRule(StockData row, int maxDay) {
+        if (rules.contains(StockDataValidationRule.SYMBOL)
+                && (row.getStockSymbol() == null || row.getStockSymbol().isEmpty())) {
+            return StockDataValidationRule.SYMBOL;
+        }
+        if (rules.contains(StockDataValidationRule.OHLC) && !isConsistentOhlc(row)) {
+            return StockDataValidationRule.OHLC;
+        }
+        if (rules.contains(StockDataValidationRule.VOLUME) && row.getVolume() < 0) { // NULL_VALUE is negative too
+            return StockDataValidationRule.VOLUME;
+        }
+        if (rules.contains(StockDataValidationRule.DATE_RANGE)
+                && (row.getTradeEpochDay() < minEpochDay || row.getTradeEpochDay() > maxDay)) {
+            return StockDataValidationRule.DATE_RANGE;
+        }
+        return null;
+    }
+
+    private static boolean isConsistentOhlc(StockData row) {
+        long open = row.getOpenPrice();
+        long high = row.getHighPrice();
+        long low = row.getLowPrice();
+        long close = row.getClosePrice();
+        // NULL_VALUE is negative, so a missing price fails the low >= 0 check or one of the comparisons
+        return low >= 0 && low <= open && low <= close && high >= open && high >= close;
+    }
+
+    private static void appendReject(StringBuilder rejects, StockDataValidationRule rule, StockData row) {
+        rejects.append(rule).append(',').append(row.getStockSymbol()).append(',').append(row.tradeLocalDate());
+        for (long price : new long[]{row.getOpenPrice(), row.getHighPrice(), row.getLowPrice(), row.getClosePrice(),
+                row.getAdjustedClosePrice()}) {
+            appendValue(rejects.append(','), price, true);
+        }
+        appendValue(rejects.append(','), row.getVolume(), false);
+        appendValue(rejects.append(','), row.getDividendAmount(), true);
+        appendValue(rejects.append(','), row.getSplitCoefficient(), true);
+        rejects.append('\n');
+    }
+
+    private static void appendValue(StringBuilder rejects, long value, boolean scaled) {
+        if (value == StockData.NULL_VALUE) {
+            return;
+        }
+        if (scaled) {
+            StockData.appendDecimal(rejects, value);
+        } else {
+            rejects.append(value);
+        }
+    }
+
+    private synchronized void writeRejects(String lines) {
+        try {
+            Files.writeString(rejectPath, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write rejected rows to " + rejectPath, e);
+        }
+    }
+}
@@ -1,19 +1,31 @@
 package com.ingestion.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
 
 @Configuration
 public class AwsConfig {
 
+    /**
+     * {@code aws.s3.endpoint} points the client at an S3-compatible store, such as a local stand-in, using
+     * path-style addressing.
+     */
     @Bean
-    public S3Client s3Client() {
-        return S3Client.builder()
+    public S3Client s3Client(@Value("${aws.s3.endpoint:}") String endpoint) {
+        S3ClientBuilder builder = S3Client.builder()
                 .region(Region.US_EAST_2)
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+                .credentialsProvider(DefaultCredentialsProvider.create());
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint))
+                    .forcePathStyle(true);
+        }
+        return builder.build();
     }
 }
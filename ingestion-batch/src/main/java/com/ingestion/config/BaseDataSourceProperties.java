@@ -12,4 +12,9 @@ public class BaseDataSourceProperties {
     private String driverClassName;
     private String username;
     private String password;
+    private int maximumPoolSize = 5;
+    private int minimumIdle = 1;
+    private long connectionTimeout = 30000;
+    private long idleTimeout = 600000;
+    private long maxLifetime = 1800000;
 }
@@ -1,12 +1,15 @@
 package com.ingestion.config;
 
 import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 import javax.sql.DataSource;
 
@@ -25,14 +28,33 @@ public class DataSourceConfig {
         return new BaseDataSourceProperties();
     }
 
+    /**
+     * Registry for the connection pool metrics (hikaricp.connections.active, .pending, .acquire, ...) and the
+     * Spring Batch metrics, both of which report to the global registry.
+     */
+    @Bean
+    public MeterRegistry meterRegistry() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        return registry;
+    }
+
     @Bean(name = "batchDataSource")
-    public DataSource batchDataSource(@Qualifier("batchDataSourceProperties") BaseDataSourceProperties batchProperties) {
-        return createHikariDataSource(batchProperties);
+    public DataSource batchDataSource(@Qualifier("batchDataSourceProperties") BaseDataSourceProperties batchProperties,
+                                      MeterRegistry meterRegistry) {
+        return createHikariDataSource("batch", batchProperties, batchProperties.getMaximumPoolSize(), meterRegistry);
     }
 
+    /**
+     * Each concurrent worker step holds one Redshift connection for the duration of its chunk transaction, so
+     * the pool always has room for every worker plus one for the tasklet steps.
+     */
     @Bean(name = "redshiftDataSource")
-    public DataSource redshiftDataSource(@Qualifier("redshiftDataSourceProperties") BaseDataSourceProperties redshiftProperties) {
-        return createRedshiftDataSource(redshiftProperties);
+    public DataSource redshiftDataSource(@Qualifier("redshiftDataSourceProperties") BaseDataSourceProperties redshiftProperties,
+                                         @Value("${ingestion.partition.concurrency:4}") int partitionConcurrency,
+                                         MeterRegistry meterRegistry) {
+        int maximumPoolSize = Math.max(redshiftProperties.getMaximumPoolSize(), partitionConcurrency + 1);
+        return createHikariDataSource("redshift", redshiftProperties, maximumPoolSize, meterRegistry);
     }
 
     @Bean(name = "batchJdbcTemplate")
@@ -45,26 +67,20 @@ public class DataSourceConfig {
         return new JdbcTemplate(redshiftDataSource);
     }
 
-    private DataSource createHikariDataSource(BaseDataSourceProperties properties) {
+    private DataSource createHikariDataSource(String poolName, BaseDataSourceProperties properties,
+                                              int maximumPoolSize, MeterRegistry meterRegistry) {
         HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName(poolName);
         dataSource.setJdbcUrl(properties.getUrl());
         dataSource.setDriverClassName(properties.getDriverClassName());
         dataSource.setUsername(properties.getUsername());
         dataSource.setPassword(properties.getPassword());
-        dataSource.setMaximumPoolSize(5);
-        dataSource.setMinimumIdle(1);
-        dataSource.setConnectionTimeout(30000);
-        dataSource.setIdleTimeout(600000);
-        dataSource.setMaxLifetime(1800000);
-        return dataSource;
-    }
-
-    private DataSource createRedshiftDataSource(BaseDataSourceProperties properties) {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setUrl(properties.getUrl());
-        dataSource.setDriverClassName(properties.getDriverClassName());
-        dataSource.setUsername(properties.getUsername());
-        dataSource.setPassword(properties.getPassword());
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setMinimumIdle(properties.getMinimumIdle());
+        dataSource.setConnectionTimeout(properties.getConnectionTimeout());
+        dataSource.setIdleTimeout(properties.getIdleTimeout());
+        dataSource.setMaxLifetime(properties.getMaxLifetime());
+        dataSource.setMetricRegistry(meterRegistry);
         return dataSource;
     }
 }
@@ -0,0 +1,44 @@
+package com.ingestion.config;
+
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
+import org.opensearch.client.transport.aws.AwsSdk2Transport;
+import org.opensearch.client.transport.aws.AwsSdk2TransportOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+
+@Configuration
+public class OpenSearchConfig {
+
+    /**
+     * Pooled non-blocking HTTP client shared by every OpenSearch writer, so several bulk requests can be in
+     * flight without a thread blocked on each.
+     */
+    @Bean(destroyMethod = "close")
+    public SdkAsyncHttpClient openSearchHttpClient(@Value("${aws.opensearch.bulk.max-in-flight:4}") int maxInFlight) {
+        return NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxInFlight * 2)
+                .build();
+    }
+
+    @Bean
+    public OpenSearchAsyncClient openSearchAsyncClient(SdkAsyncHttpClient openSearchHttpClient,
+                                                       @Value("${aws.opensearch.endpoint}") String openSearchEndpoint,
+                                                       @Value("${aws.region}") String awsRegion) {
+        return new OpenSearchAsyncClient(
+                new AwsSdk2Transport(
+                        openSearchHttpClient,
+                        openSearchEndpoint,
+                        "es",
+                        Region.of(awsRegion),
+                        AwsSdk2TransportOptions.builder()
+                                .setCredentials(DefaultCredentialsProvider.create())
+                                .build()
+                )
+        );
+    }
+}
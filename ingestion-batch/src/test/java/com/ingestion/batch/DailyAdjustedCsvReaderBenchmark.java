@@ -0,0 +1,120 @@
+package com.ingestion.batch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.core.io.InputStreamResource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second and bytes allocated per row when parsing an in-memory {@code daily_adjusted_*} object with
+ * {@link DailyAdjustedCsvReader}, against the previous {@code FlatFileItemReader} pipeline that tokenized every
+ * line into a {@code FieldSet} and mapped it to a bean of {@code BigDecimal}s, a boxed volume and a {@code Date}.
+ * Run with the GC profiler ({@code -prof gc}) for the allocation figures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DailyAdjustedCsvReaderBenchmark {
+
+    private static final String KEY = "stock-data/daily_adjusted_aapl.csv";
+    private static final int ROWS = 10_000;
+
+    private byte[] object;
+
+    @Setup
+    public void setUp() {
+        StringBuilder csv = new StringBuilder("timestamp,open,high,low,close,adjusted_close,volume,dividend_amount,split_coefficient\n");
+        for (int row = 0; row < ROWS; row++) {
+            csv.append(LocalDate.ofEpochDay(10_000 + row)).append(",151.2300,153.4500,149.8100,152.0000,151.9700,")
+                    .append(30_000_000 + row).append(",0.0000,1.0\n");
+        }
+        object = csv.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void byteParser(Blackhole blackhole) throws Exception {
+        DailyAdjustedCsvReader reader = new DailyAdjustedCsvReader(KEY, "AAPL", new ByteArrayInputStream(object), 65536);
+        reader.setSaveState(false);
+        reader.open(new ExecutionContext());
+        for (StockData row = reader.read(); row != null; row = reader.read()) {
+            blackhole.consume(row);
+        }
+        reader.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void flatFileItemReader(Blackhole blackhole) throws Exception {
+        FlatFileItemReader<BeanStockData> reader = flatFileReader();
+        reader.open(new ExecutionContext());
+        for (BeanStockData row = reader.read(); row != null; row = reader.read()) {
+            blackhole.consume(row);
+        }
+        reader.close();
+    }
+
+    /**
+     * The reader {@code S3CsvItemReader} built for every object before {@link DailyAdjustedCsvReader}.
+     */
+    private FlatFileItemReader<BeanStockData> flatFileReader() {
+        FlatFileItemReader<BeanStockData> fileReader = new FlatFileItemReader<>();
+        fileReader.setName("s3CsvItemReader");
+        fileReader.setResource(new InputStreamResource(new ByteArrayInputStream(object), KEY));
+        fileReader.setBufferedReaderFactory((resource, encoding) ->
+                new BufferedReader(new InputStreamReader(resource.getInputStream(), encoding), 65536));
+        fileReader.setLinesToSkip(1);
+        fileReader.setSaveState(false);
+        fileReader.setLineMapper(new DefaultLineMapper<>() {{
+            setLineTokenizer(new DelimitedLineTokenizer() {{
+                setNames("tradeDate", "openPrice", "highPrice", "lowPrice", "closePrice", "adjustedClosePrice", "volume", "dividendAmount", "splitCoefficient");
+            }});
+            setFieldSetMapper(fieldSet -> new BeanStockData(
+                    KEY.replace("stock-data/daily_adjusted_", "").replace(".csv", "").toUpperCase(),
+                    fieldSet.readDate("tradeDate", "yyyy-MM-dd"),
+                    fieldSet.readBigDecimal("openPrice"),
+                    fieldSet.readBigDecimal("highPrice"),
+                    fieldSet.readBigDecimal("lowPrice"),
+                    fieldSet.readBigDecimal("closePrice"),
+                    fieldSet.readBigDecimal("adjustedClosePrice"),
+                    fieldSet.readLong("volume"),
+                    fieldSet.readBigDecimal("dividendAmount"),
+                    fieldSet.readBigDecimal("splitCoefficient")
+            ));
+        }});
+        return fileReader;
+    }
+
+    /**
+     * The fields of {@link StockData} before it held primitives.
+     */
+    record BeanStockData(String stockSymbol, Date tradeDate, BigDecimal openPrice, BigDecimal highPrice,
+                         BigDecimal lowPrice, BigDecimal closePrice, BigDecimal adjustedClosePrice, Long volume,
+                         BigDecimal dividendAmount, BigDecimal splitCoefficient) {
+    }
+}
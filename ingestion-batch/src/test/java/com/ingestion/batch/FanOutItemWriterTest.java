@@ -0,0 +1,85 @@
+package com.ingestion.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FanOutItemWriterTest {
+
+    private final List<CompletableFuture<Void>> requests = new ArrayList<>();
+    private final List<List<StockData>> indexed = new ArrayList<>();
+
+    /**
+     * The process dies after committing a chunk whose bulk request is still in flight. The restarted partition
+     * resumes at the last acknowledged chunk, indexes the unacknowledged rows again and writes only new rows to
+     * Redshift, even though validation dropped a row so that read and written counts differ.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void restartFromContextSavedWithRequestsInFlightReplaysToOpenSearchOnly() throws Exception {
+        RedshiftItemWriter redshift = mock(RedshiftItemWriter.class);
+        FanOutItemWriter writer = writer(redshift);
+        ExecutionContext context = new ExecutionContext();
+        writer.open(context);
+
+        commitChunk(writer, context, 2, rows(0, 2));
+        requests.get(0).complete(null);
+        // Three rows read, one of them rejected by validation
+        commitChunk(writer, context, 5, rows(2, 4));
+
+        assertThat(context.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY)).isEqualTo(2);
+        ExecutionContext saved = new ExecutionContext(context);
+
+        RedshiftItemWriter restartedRedshift = mock(RedshiftItemWriter.class);
+        FanOutItemWriter restarted = writer(restartedRedshift);
+        restarted.open(saved);
+        Chunk<StockData> replayed = rows(2, 4);
+        Chunk<StockData> next = rows(4, 6);
+        commitChunk(restarted, saved, 5, replayed);
+        commitChunk(restarted, saved, 7, next);
+
+        verify(restartedRedshift, never()).write(replayed);
+        verify(restartedRedshift).write(any(Chunk.class));
+        verify(restartedRedshift).write(next);
+        assertThat(indexed.get(2)).containsExactlyElementsOf(replayed.getItems());
+        assertThat(indexed.get(3)).containsExactlyElementsOf(next.getItems());
+    }
+
+    private static void commitChunk(FanOutItemWriter writer, ExecutionContext context, int readCount, Chunk<StockData> chunk)
+            throws Exception {
+        writer.write(chunk);
+        context.putInt(DailyAdjustedCsvReader.READ_COUNT_KEY, readCount);
+        writer.update(context);
+    }
+
+    private static Chunk<StockData> rows(int from, int to) {
+        List<StockData> rows = new ArrayList<>();
+        for (int day = from; day < to; day++) {
+            rows.add(new StockData("AAPL", 18_000 + day, 1, 1, 1, 1, 1, 1, 0, 10_000));
+        }
+        return new Chunk<>(rows);
+    }
+
+    private FanOutItemWriter writer(RedshiftItemWriter redshift) {
+        OpenSearchBulkIndexer bulkIndexer = mock(OpenSearchBulkIndexer.class);
+        when(bulkIndexer.submit(anyList(), anyList(), any())).thenAnswer(invocation -> {
+            indexed.add(List.copyOf(invocation.<List<StockData>>getArgument(1)));
+            CompletableFuture<Void> request = new CompletableFuture<>();
+            requests.add(request);
+            return request;
+        });
+        return new FanOutItemWriter(redshift, new OpenSearchItemWriter(bulkIndexer, "stock-data", 1000, 5_242_880, false), 1000);
+    }
+}
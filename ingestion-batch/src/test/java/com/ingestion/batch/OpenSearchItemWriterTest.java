@@ -0,0 +1,82 @@
+package com.ingestion.batch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OpenSearchItemWriterTest {
+
+    private final List<CompletableFuture<Void>> requests = new ArrayList<>();
+    private final OpenSearchItemWriter writer = writer();
+
+    @Test
+    void savesReadCountOfLastAcknowledgedChunk() {
+        ExecutionContext context = new ExecutionContext();
+        context.putInt(DailyAdjustedCsvReader.READ_COUNT_KEY, 10);
+        writer.open(context);
+
+        commitChunk(context, 20);
+        assertThat(context.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY)).isEqualTo(10);
+        commitChunk(context, 30);
+        requests.get(1).complete(null);
+        commitChunk(context, 40);
+        assertThat(context.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY)).isEqualTo(10);
+
+        requests.get(0).complete(null);
+        commitChunk(context, 50);
+        assertThat(context.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY)).isEqualTo(30);
+    }
+
+    @Test
+    void failedRequestInFlightAtStepEndRewindsToLastAcknowledgedChunk() {
+        StepExecution stepExecution = new StepExecution("openSearchWorkerStep", null);
+        ExecutionContext context = stepExecution.getExecutionContext();
+        writer.open(context);
+        commitChunk(context, 10);
+        commitChunk(context, 20);
+        commitChunk(context, 30);
+        requests.get(0).complete(null);
+        requests.get(1).completeExceptionally(new IOException("bulk request failed"));
+        requests.get(2).complete(null);
+
+        ExitStatus exitStatus = writer.afterStep(stepExecution);
+
+        assertThat(exitStatus).isEqualTo(ExitStatus.FAILED);
+        assertThat(context.getInt(DailyAdjustedCsvReader.READ_COUNT_KEY)).isEqualTo(10);
+    }
+
+    /**
+     * Writes a one-row chunk and saves the state the step would commit with the reader at {@code readCount}.
+     */
+    private void commitChunk(ExecutionContext context, int readCount) {
+        writer.write(Chunk.of(new StockData("AAPL", readCount, 1, 1, 1, 1, 1, 1, 0, 10_000)));
+        context.putInt(DailyAdjustedCsvReader.READ_COUNT_KEY, readCount);
+        writer.update(context);
+    }
+
+    private OpenSearchItemWriter writer() {
+        OpenSearchBulkIndexer bulkIndexer = mock(OpenSearchBulkIndexer.class);
+        when(bulkIndexer.submit(anyList(), anyList(), any())).thenAnswer(invocation -> {
+            CompletableFuture<Void> request = new CompletableFuture<>();
+            requests.add(request);
+            return request;
+        });
+        OpenSearchItemWriter writer = new OpenSearchItemWriter(bulkIndexer, "stock-data", 1000, 5_242_880, false);
+        writer.setMaxSubmitWait(Duration.ofSeconds(1));
+        return writer;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ingestion.batch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.Chunk;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Rows per second written to an in-memory H2 {@code stock_data} by {@link RedshiftItemWriter}'s prepared multi-row
+ * INSERT, against the previous writer that formatted every chunk into one SQL literal. Both write chunks of
+ * {@code ingestion.chunk-size} rows; the prepared path also records the chunk's pending rollup range.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedshiftItemWriterBenchmark {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private RedshiftItemWriter writer;
+    private Chunk<StockData> chunk;
+
+    @Setup
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:benchmark;MODE=PostgreSQL", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute(ManagedTable.STOCK_DATA.createSql("stock_data", false));
+        jdbcTemplate.execute("CREATE TABLE stock_data_rollup_pending (stock_symbol VARCHAR(10), min_date DATE, max_date DATE)");
+        writer = new RedshiftItemWriter(jdbcTemplate, null, RedshiftLoadMode.INSERT, 0, false, "stock_data", null);
+        List<StockData> rows = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            rows.add(new StockData("AAPL", 17_000 + i, 1_512_300 + i, 1_534_500 + i, 1_498_100 + i, 1_520_000 + i,
+                    1_519_700 + i, 30_000_000L + i, 0, 10_000));
+        }
+        chunk = new Chunk<>(rows);
+    }
+
+    @TearDown(Level.Invocation)
+    public void truncate() {
+        jdbcTemplate.execute("TRUNCATE TABLE stock_data");
+        jdbcTemplate.execute("TRUNCATE TABLE stock_data_rollup_pending");
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public void preparedStatement() throws Exception {
+        writer.write(chunk);
+    }
+
+    /**
+     * The writer before prepared statements: every chunk became a new statement text for the database to parse.
+     */
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public void formattedLiteral() {
+        String sql = "INSERT INTO stock_data (stock_symbol, trade_date, open_price, high_price, low_price, close_price, adjusted_close_price, volume, dividend_amount, split_coefficient) VALUES ";
+        String values = chunk.getItems().stream()
+                .map(data -> String.format(
+                        "('%s', '%s', %.4f, %.4f, %.4f, %.4f, %.4f, %d, %.4f, %.4f)",
+                        data.getStockSymbol(),
+                        data.tradeLocalDate(),
+                        StockData.toBigDecimal(data.getOpenPrice()),
+                        StockData.toBigDecimal(data.getHighPrice()),
+                        StockData.toBigDecimal(data.getLowPrice()),
+                        StockData.toBigDecimal(data.getClosePrice()),
+                        StockData.toBigDecimal(data.getAdjustedClosePrice()),
+                        data.getVolume(),
+                        StockData.toBigDecimal(data.getDividendAmount()),
+                        StockData.toBigDecimal(data.getSplitCoefficient())
+                ))
+                .collect(Collectors.joining(", "));
+        jdbcTemplate.execute(sql + values + ";");
+    }
+}
@@ -0,0 +1,26 @@
+package com.ingestion.batch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pins the tables and {@code DATE_TRUNC} date parts the search Lambda's {@code RollupPeriod} reads from: a period
+ * starts on Monday for weeks and on the first day for months and years, keyed by {@code period_start}.
+ */
+class RollupPeriodTest {
+
+    @Test
+    void maintainsTheTablesTheSearchLambdaReads() {
+        assertThat(RollupPeriod.values()).extracting(RollupPeriod::table)
+                .containsExactly("stock_data_weekly", "stock_data_monthly", "stock_data_yearly");
+        assertThat(ManagedTable.all()).extracting(ManagedTable::name)
+                .contains("stock_data_weekly", "stock_data_monthly", "stock_data_yearly");
+    }
+
+    @Test
+    void bucketsRowsByCalendarPeriod() {
+        assertThat(RollupPeriod.values()).extracting(RollupPeriod::datePart)
+                .containsExactly("week", "month", "year");
+    }
+}
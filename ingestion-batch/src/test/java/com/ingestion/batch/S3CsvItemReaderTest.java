@@ -0,0 +1,231 @@
+package com.ingestion.batch;
+
+import com.ingestion.config.AwsConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.batch.item.ExecutionContext;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class S3CsvItemReaderTest {
+
+    private static final String PREFIX = "stock-data/";
+    private static final String KEY = PREFIX + "daily_adjusted_test.csv";
+    private static final int ROWS = 12;
+
+    /**
+     * Streams the object over HTTP from a local S3 stand-in, through the client {@link AwsConfig} builds for
+     * {@code aws.s3.endpoint}, so that buffering anywhere between the socket and the parser would show in the heap.
+     */
+    @Test
+    void streamsLargeObjectWithBoundedHeap() throws Exception {
+        long rows = 3_000_000; // About 200 MB of CSV
+        HttpServer s3 = localS3(rows);
+        System.setProperty("aws.accessKeyId", "test");
+        System.setProperty("aws.secretAccessKey", "test");
+        try (S3Client s3Client = new AwsConfig().s3Client("http://localhost:" + s3.getAddress().getPort())) {
+            S3CsvItemReader reader = partitionReader(s3Client);
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+            System.gc();
+            long baseline = memory.getHeapMemoryUsage().getUsed();
+            long peak = 0;
+            long read = 0;
+            reader.open(new ExecutionContext());
+            while (reader.read() != null) {
+                if (++read % 500_000 == 0) {
+                    System.gc();
+                    peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed() - baseline);
+                }
+            }
+            reader.close();
+
+            assertThat(read).isEqualTo(rows);
+            assertThat(peak).isLessThan(32L * 1024 * 1024);
+        } finally {
+            System.clearProperty("aws.accessKeyId");
+            System.clearProperty("aws.secretAccessKey");
+            s3.stop(0);
+        }
+    }
+
+    /**
+     * Reads {@link #csv} split into byte ranges of {@code splitSize}, as {@link S3ObjectPartitioner} splits it, and
+     * expects the splits together to yield the rows of the whole object, each exactly once and in order. A read
+     * buffer smaller than a line also moves lines across buffer refills.
+     */
+    @ParameterizedTest(name = "{0}, trailing newline {1}, split size {2}")
+    @MethodSource("splits")
+    void splitReadsMatchWholeObjectRead(String lineEnding, boolean trailingNewline, int splitSize) throws Exception {
+        byte[] object = csv(lineEnding, trailingNewline);
+        S3Client s3Client = objectClient(object);
+        List<StockData> whole = readAll(partitionReader(s3Client));
+
+        List<StockData> split = new ArrayList<>();
+        for (long start = 0; start < object.length; start += splitSize) {
+            split.addAll(readAll(rangeReader(s3Client, start, Math.min(start + splitSize, (long) object.length), 7)));
+        }
+
+        assertThat(whole).hasSize(ROWS);
+        assertThat(split).containsExactlyElementsOf(whole);
+    }
+
+    /**
+     * Every split size up to two lines, so that range boundaries fall on each byte of a line, including between
+     * {@code \r} and {@code \n}, plus sizes ending a range on and just before the last byte of the object.
+     */
+    static Stream<Arguments> splits() {
+        List<Arguments> splits = new ArrayList<>();
+        for (String lineEnding : List.of("LF", "CRLF")) {
+            for (boolean trailingNewline : List.of(true, false)) {
+                int length = csv(lineEnding, trailingNewline).length;
+                int twoLines = 2 * (length / (ROWS + 1)) + 4;
+                for (int size = 1; size <= twoLines; size++) {
+                    splits.add(Arguments.of(lineEnding, trailingNewline, size));
+                }
+                for (int size : new int[]{length / 2, length - 2, length - 1, length, length + 1}) {
+                    splits.add(Arguments.of(lineEnding, trailingNewline, size));
+                }
+            }
+        }
+        return splits.stream();
+    }
+
+    private static byte[] csv(String lineEnding, boolean trailingNewline) {
+        String newline = lineEnding.equals("CRLF") ? "\r\n" : "\n";
+        StringBuilder csv = new StringBuilder("timestamp,open,high,low,close,adjusted_close,volume,dividend_amount,split_coefficient");
+        for (int row = 0; row < ROWS; row++) {
+            csv.append(newline).append(LocalDate.ofEpochDay(18_000 + row)).append(",75.8385,77.3553,74.3217,76.5969,76.5969,")
+                    .append(row * 1_000L).append(",0.0000,1.0");
+        }
+        if (trailingNewline) {
+            csv.append(newline);
+        }
+        return csv.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * An S3 client serving {@code object} for plain and {@code bytes=<start>-} ranged GETs.
+     */
+    private static S3Client objectClient(byte[] object) {
+        S3Client s3Client = mock(S3Client.class, CALLS_REAL_METHODS);
+        doAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            int start = request.range() == null ? 0 : Integer.parseInt(request.range().replaceAll("bytes=(\\d+)-", "$1"));
+            return response(new ByteArrayInputStream(object, start, object.length - start));
+        }).when(s3Client).getObject(any(GetObjectRequest.class));
+        return s3Client;
+    }
+
+    private static List<StockData> readAll(S3CsvItemReader reader) throws Exception {
+        List<StockData> rows = new ArrayList<>();
+        reader.open(new ExecutionContext());
+        for (StockData row = reader.read(); row != null; row = reader.read()) {
+            rows.add(row);
+        }
+        reader.close();
+        return rows;
+    }
+
+    static S3CsvItemReader partitionReader(S3Client s3Client) {
+        return rangeReader(s3Client, null, null, 65536);
+    }
+
+    static S3CsvItemReader rangeReader(S3Client s3Client, Long rangeStart, Long rangeEnd, int readBufferSize) {
+        return new S3CsvItemReader(s3Client, "bucket", PREFIX, KEY, null, 0L, rangeStart, rangeEnd,
+                mock(S3ObjectWatermarkStore.class), "false", readBufferSize, 0, 0);
+    }
+
+    /**
+     * A path-style S3 endpoint on a free local port answering GETs of {@link #KEY} in {@code bucket} with a
+     * {@link GeneratedCsv} of {@code rows} rows.
+     */
+    private static HttpServer localS3(long rows) throws IOException {
+        long length = new GeneratedCsv(rows).transferTo(OutputStream.nullOutputStream());
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if (!exchange.getRequestMethod().equals("GET") || !exchange.getRequestURI().getPath().equals("/bucket/" + KEY)) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/csv");
+            exchange.sendResponseHeaders(200, length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                new GeneratedCsv(rows).transferTo(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    static ResponseInputStream<GetObjectResponse> response(InputStream content) {
+        return new ResponseInputStream<>(GetObjectResponse.builder().build(), AbortableInputStream.create(content));
+    }
+
+    /**
+     * A CSV object produced line by line as it is read, so the test itself holds none of it in heap.
+     */
+    private static final class GeneratedCsv extends InputStream {
+
+        private final long rows;
+        private long row = -1;
+        private byte[] line = "timestamp,open,high,low,close,adjusted_close,volume,dividend_amount,split_coefficient\n"
+                .getBytes(StandardCharsets.US_ASCII);
+        private int position;
+
+        GeneratedCsv(long rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (position == line.length) {
+                if (++row == rows) {
+                    return -1;
+                }
+                long day = 18_000 + row % 10_000;
+                line = (LocalDate.ofEpochDay(day) + ",75.8385,77.3553,74.3217,76.5969,76.5969," + row
+                        + ",0.0000,1.0\n").getBytes(StandardCharsets.US_ASCII);
+                position = 0;
+            }
+            int count = Math.min(length, line.length - position);
+            System.arraycopy(line, position, target, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.search.sample;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProviderChain;
+import software.amazon.awssdk.auth.credentials.ContainerCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.redshiftdata.RedshiftDataAsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+/**
+ * AWS clients shared by every invocation of a container, built once during static initialization so their cost is
+ * part of the Lambda init phase (and of a SnapStart snapshot) rather than of the first request.
+ * <p>
+ * Credentials come from the variables Lambda exports for the execution role, falling back to the container
+ * endpoint used after a SnapStart restore, instead of probing the whole default provider chain. HTTP clients are
+ * set explicitly so the SDK does not scan the classpath for an implementation.
+ */
+final class AwsClients {
+
+    private static final Region REGION = Region.of(System.getenv("AWS_REGION"));
+    private static final AwsCredentialsProvider CREDENTIALS = AwsCredentialsProviderChain.of(
+            EnvironmentVariableCredentialsProvider.create(),
+            ContainerCredentialsProvider.builder().build());
+
+    static final RedshiftDataAsyncClient REDSHIFT_DATA = RedshiftDataAsyncClient.builder()
+            .region(REGION)
+            .credentialsProvider(CREDENTIALS)
+            .httpClientBuilder(NettyNioAsyncHttpClient.builder())
+            .build();
+
+    private AwsClients() {
+    }
+
+    static S3Client s3() {
+        return S3Client.builder()
+                .region(REGION)
+                .credentialsProvider(CREDENTIALS)
+                .httpClientBuilder(UrlConnectionHttpClient.builder())
+                .build();
+    }
+}
@@ -0,0 +1,12 @@
+package com.search.sample;
+
+import software.amazon.awssdk.services.redshiftdata.model.SqlParameter;
+
+import java.util.List;
+
+/**
+ * A {@link QueryTemplate} with validated parameters, ready to execute. {@code cacheKey} identifies the template and
+ * parameter values for {@link QueryResultCache}.
+ */
+public record BoundQuery(String sql, List<SqlParameter> parameters, String cacheKey) {
+}
@@ -0,0 +1,104 @@
+package com.search.sample;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Duration;
+
+/**
+ * Serialized query results (see {@link QueryResultWriter}) keyed on {@link BoundQuery#cacheKey()}. The cache is
+ * static, so a warm Lambda container keeps serving results cached by earlier invocations until they expire
+ * ({@code QUERY_CACHE_TTL_SECONDS}) or are evicted to keep the size of the cached results under
+ * {@code QUERY_CACHE_MAX_BYTES}.
+ * <p>
+ * The ingestion job writes a marker object to S3 when a run completes. When {@code INGESTION_MARKER_BUCKET} is
+ * set, the marker's ETag is checked at most every {@code QUERY_CACHE_MARKER_CHECK_SECONDS} and the whole cache is
+ * dropped once it changes.
+ */
+final class QueryResultCache {
+
+    private static final long TTL_SECONDS = envLong("QUERY_CACHE_TTL_SECONDS", 300);
+    private static final long MAX_BYTES = envLong("QUERY_CACHE_MAX_BYTES", 64L * 1024 * 1024);
+    private static final long MARKER_CHECK_MILLIS = envLong("QUERY_CACHE_MARKER_CHECK_SECONDS", 60) * 1000;
+    private static final String MARKER_BUCKET = System.getenv("INGESTION_MARKER_BUCKET");
+    private static final String MARKER_KEY = System.getenv().getOrDefault("INGESTION_MARKER_KEY", "markers/ingestion-completed");
+
+    private static final Cache<String, String> RESULTS = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(TTL_SECONDS))
+            .maximumWeight(MAX_BYTES)
+            .weigher((String key, String result) -> 2 * (key.length() + result.length()))
+            .recordStats()
+            .build();
+
+    private static final S3Client S3_CLIENT = MARKER_BUCKET == null ? null : AwsClients.s3();
+
+    static {
+        if (MARKER_BUCKET == null) {
+            System.out.println("[WARN] INGESTION_MARKER_BUCKET is not set, cached query results are only dropped once they expire");
+        }
+    }
+
+    private static String markerETag;
+    private static long nextMarkerCheck;
+    private static CacheStats lastStats = CacheStats.empty();
+
+    private QueryResultCache() {
+    }
+
+    static String get(String key) {
+        return RESULTS.getIfPresent(key);
+    }
+
+    /**
+     * Caches the result of a query that completed; failed queries must not be cached.
+     */
+    static void put(String key, String result) {
+        RESULTS.put(key, result);
+    }
+
+    /**
+     * Drops every cached result if an ingestion run completed since the last check.
+     */
+    static synchronized void invalidateIfIngested(LambdaLogger logger) {
+        if (MARKER_BUCKET == null || System.currentTimeMillis() < nextMarkerCheck) {
+            return;
+        }
+        nextMarkerCheck = System.currentTimeMillis() + MARKER_CHECK_MILLIS;
+        String eTag;
+        try {
+            eTag = S3_CLIENT.headObject(b -> b.bucket(MARKER_BUCKET).key(MARKER_KEY)).eTag();
+        } catch (NoSuchKeyException e) {
+            eTag = null;
+        } catch (S3Exception e) {
+            logger.log("[WARN] Could not read ingestion marker, keeping cached results: " + e.getMessage());
+            return;
+        }
+        if (markerETag != null && !markerETag.equals(eTag)) {
+            RESULTS.invalidateAll();
+            logger.log("[INFO] Ingestion completed since the last check, query result cache cleared");
+        }
+        markerETag = eTag;
+    }
+
+    /**
+     * Logs the hits, misses and evictions of this invocation along with the totals of the container.
+     */
+    static synchronized void logStats(LambdaLogger logger) {
+        CacheStats stats = RESULTS.stats();
+        CacheStats invocation = stats.minus(lastStats);
+        lastStats = stats;
+        logger.log("[INFO] Query cache: " + invocation.hitCount() + " hits, " + invocation.missCount() + " misses, "
+                + invocation.evictionCount() + " evictions this invocation; " + RESULTS.estimatedSize()
+                + " entries, hit rate " + String.format("%.2f", stats.hitRate()) + " since cold start");
+    }
+
+    private static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Long.parseLong(value.trim());
+    }
+}
@@ -0,0 +1,101 @@
+package com.search.sample;
+
+import com.google.gson.stream.JsonWriter;
+import software.amazon.awssdk.services.redshiftdata.model.ColumnMetadata;
+import software.amazon.awssdk.services.redshiftdata.model.Field;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Serializes a query result as it is paged in, in a column layout: the column names once, then one array of typed
+ * values per row, and a {@code nextToken} when the result was cut at the byte limit.
+ * <pre>{"columns":["stock_symbol","volume"],"rows":[["AAPL",1200],["MSFT",800]],"nextToken":"..."}</pre>
+ * Only the serialized output and the page being written are held in memory.
+ */
+final class QueryResultWriter {
+
+    static final String EMPTY_RESULT = "{\"columns\":[],\"rows\":[]}";
+
+    private final StringWriter buffer = new StringWriter();
+    private final JsonWriter json = new JsonWriter(buffer);
+    private final long maxBytes;
+    private boolean started;
+    private int rowCount;
+
+    QueryResultWriter(long maxBytes) {
+        this.maxBytes = maxBytes;
+        json.setHtmlSafe(false);
+    }
+
+    /**
+     * Writes the column names; only the first call has an effect.
+     */
+    void writeColumns(List<ColumnMetadata> columns) {
+        if (started) {
+            return;
+        }
+        try {
+            json.beginObject().name("columns").beginArray();
+            for (ColumnMetadata column : columns) {
+                json.value(column.name());
+            }
+            json.endArray().name("rows").beginArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        started = true;
+    }
+
+    /**
+     * Whether the output reached the byte limit. At least one row is always written so that paging makes progress.
+     */
+    boolean isFull() {
+        return rowCount > 0 && buffer.getBuffer().length() >= maxBytes;
+    }
+
+    void writeRow(List<Field> record) {
+        try {
+            json.beginArray();
+            for (Field field : record) {
+                if (Boolean.TRUE.equals(field.isNull())) {
+                    json.nullValue();
+                } else if (field.longValue() != null) {
+                    json.value(field.longValue());
+                } else if (field.doubleValue() != null) {
+                    json.value(field.doubleValue());
+                } else if (field.booleanValue() != null) {
+                    json.value(field.booleanValue());
+                } else if (field.blobValue() != null) {
+                    json.value(Base64.getEncoder().encodeToString(field.blobValue().asByteArray()));
+                } else {
+                    json.value(field.stringValue()); // DECIMAL values arrive as strings and keep their precision
+                }
+            }
+            json.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rowCount++;
+    }
+
+    /**
+     * Closes the output, adding the continuation cursor if there is one, and returns it.
+     */
+    String finish(String nextToken) {
+        writeColumns(List.of());
+        try {
+            json.endArray();
+            if (nextToken != null) {
+                json.name("nextToken").value(nextToken);
+            }
+            json.endObject().close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,228 @@
+package com.search.sample;
+
+import software.amazon.awssdk.services.redshiftdata.model.SqlParameter;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The queries the search Lambda runs, by name. Callers pick a template and pass its parameters; symbol and dates are
+ * sent as Data API parameters, so the statement text of a template stays the same and Redshift can reuse its
+ * compiled plan. Every template is bounded by a mandatory date range of at most {@code QUERY_MAX_RANGE_DAYS} and a
+ * row limit of at most {@code QUERY_MAX_LIMIT}.
+ * <p>
+ * Aggregates are answered from the {@link RollupPeriod} tables where possible: {@code OHLC_SUMMARY} over a range of
+ * whole weeks, months or years reads a few rollup rows instead of every daily row.
+ */
+public enum QueryTemplate {
+    /** Daily rows of one symbol: {@code symbol}, {@code from}, {@code to}, optional {@code limit}. */
+    SYMBOL_HISTORY(true, """
+            SELECT stock_symbol, trade_date, open_price, high_price, low_price, close_price, adjusted_close_price,
+                   volume, dividend_amount, split_coefficient
+            FROM stock_data
+            WHERE stock_symbol = :symbol AND trade_date BETWEEN CAST(:from_date AS DATE) AND CAST(:to_date AS DATE)
+            ORDER BY trade_date
+            LIMIT %2$d"""),
+    /** Daily rows of every symbol: {@code from}, {@code to}, optional {@code limit}. */
+    DATE_RANGE(false, """
+            SELECT stock_symbol, trade_date, open_price, high_price, low_price, close_price, adjusted_close_price,
+                   volume, dividend_amount, split_coefficient
+            FROM stock_data
+            WHERE trade_date BETWEEN CAST(:from_date AS DATE) AND CAST(:to_date AS DATE)
+            ORDER BY trade_date, stock_symbol
+            LIMIT %2$d"""),
+    /** Symbols with the highest total volume: {@code from}, {@code to}, optional {@code limit}. */
+    TOP_VOLUME(false, """
+            SELECT stock_symbol, SUM(volume) AS total_volume
+            FROM stock_data
+            WHERE trade_date BETWEEN CAST(:from_date AS DATE) AND CAST(:to_date AS DATE)
+            GROUP BY stock_symbol
+            ORDER BY total_volume DESC
+            LIMIT %2$d"""),
+    /** Open, high, low, close and volume of one symbol over the range: {@code symbol}, {@code from}, {@code to}. */
+    OHLC_SUMMARY(true, """
+            SELECT stock_symbol, MIN(trade_date) AS first_date, MAX(trade_date) AS last_date,
+                   MAX(CASE WHEN first_day = 1 THEN open_price END) AS open_price, MAX(high_price) AS high_price,
+                   MIN(low_price) AS low_price, MAX(CASE WHEN last_day = 1 THEN close_price END) AS close_price,
+                   SUM(volume) AS volume
+            FROM (
+                SELECT *, ROW_NUMBER() OVER (ORDER BY trade_date) AS first_day,
+                       ROW_NUMBER() OVER (ORDER BY trade_date DESC) AS last_day
+                FROM stock_data
+                WHERE stock_symbol = :symbol AND trade_date BETWEEN CAST(:from_date AS DATE) AND CAST(:to_date AS DATE)
+            ) range_rows
+            GROUP BY stock_symbol
+            LIMIT %2$d""") {
+        @Override
+        RollupPeriod rollup(LocalDate from, LocalDate to, Map<String, Object> values) {
+            return RollupPeriod.covering(from, to);
+        }
+
+        @Override
+        String rollupSql() {
+            return """
+                    SELECT stock_symbol, MIN(first_date) AS first_date, MAX(last_date) AS last_date,
+                           MAX(CASE WHEN first_period = 1 THEN open_price END) AS open_price, MAX(high_price) AS high_price,
+                           MIN(low_price) AS low_price, MAX(CASE WHEN last_period = 1 THEN close_price END) AS close_price,
+                           SUM(volume) AS volume
+                    FROM (
+                        SELECT *, ROW_NUMBER() OVER (ORDER BY period_start) AS first_period,
+                               ROW_NUMBER() OVER (ORDER BY period_start DESC) AS last_period
+                        FROM %1$s
+                        WHERE stock_symbol = :symbol AND period_start BETWEEN CAST(:from_date AS DATE) AND CAST(:to_date AS DATE)
+                    ) range_rows
+                    GROUP BY stock_symbol
+                    LIMIT %2$d""";
+        }
+    },
+    /**
+     * One OHLCV row per period of one symbol, for periods starting in the range: {@code symbol}, {@code period}
+     * ({@code WEEK}, {@code MONTH} or {@code YEAR}), {@code from}, {@code to}, optional {@code limit}.
+     */
+    PERIOD_OHLC(true, """
+            SELECT stock_symbol, period_start, first_date, last_date, open_price, high_price, low_price, close_price,
+                   avg_close_price, volume, trading_days
+            FROM %1$s
+            WHERE stock_symbol = :symbol AND period_start BETWEEN CAST(:from_date AS DATE) AND CAST(:to_date AS DATE)
+            ORDER BY period_start
+            LIMIT %2$d""") {
+        @Override
+        RollupPeriod rollup(LocalDate from, LocalDate to, Map<String, Object> values) {
+            return RollupPeriod.named(require(values, "period"));
+        }
+
+        @Override
+        String rollupSql() {
+            return PERIOD_OHLC.sql;
+        }
+    };
+
+    private static final Pattern SYMBOL = Pattern.compile("[A-Z0-9.\\-]{1,10}");
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = (int) envLong("QUERY_MAX_LIMIT", 10000);
+    private static final long MAX_RANGE_DAYS = envLong("QUERY_MAX_RANGE_DAYS", 3660);
+
+    private final boolean symbolRequired;
+    private final String sql;
+    // Statement text by source table and limit; a template runs with few of them, each keeping its own compiled plan
+    private final Map<String, String> sqlBySourceAndLimit = new ConcurrentHashMap<>();
+
+    QueryTemplate(boolean symbolRequired, String sql) {
+        this.symbolRequired = symbolRequired;
+        this.sql = sql;
+    }
+
+    /**
+     * The rollup to read instead of {@code stock_data}, or {@code null} to read the daily rows. Only consulted for
+     * templates with a {@link #rollupSql}.
+     */
+    RollupPeriod rollup(LocalDate from, LocalDate to, Map<String, Object> values) {
+        return null;
+    }
+
+    /**
+     * The statement used when {@link #rollup} returns a period, with the rollup table as {@code %1$s}, or
+     * {@code null} if the template always reads the daily rows.
+     */
+    String rollupSql() {
+        return null;
+    }
+
+    /**
+     * Returns the template with the given name.
+     *
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static QueryTemplate named(Object name) {
+        if (!(name instanceof String template)) {
+            throw new IllegalArgumentException("Missing query name");
+        }
+        try {
+            return valueOf(template.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown query: " + template);
+        }
+    }
+
+    /**
+     * Validates the parameters and binds them to the statement.
+     *
+     * @throws IllegalArgumentException if a parameter is missing or out of bounds
+     */
+    public BoundQuery bind(Map<String, Object> params) {
+        Map<String, Object> values = params != null ? params : Map.of();
+        List<SqlParameter> parameters = new ArrayList<>(3);
+        StringBuilder key = new StringBuilder(name());
+        if (symbolRequired) {
+            String symbol = String.valueOf(require(values, "symbol")).trim().toUpperCase(Locale.ROOT);
+            if (!SYMBOL.matcher(symbol).matches()) {
+                throw new IllegalArgumentException("Invalid symbol: " + symbol);
+            }
+            parameters.add(SqlParameter.builder().name("symbol").value(symbol).build());
+            key.append('|').append(symbol);
+        }
+        LocalDate from = date(values, "from");
+        LocalDate to = date(values, "to");
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("'to' must not be before 'from'");
+        }
+        if (ChronoUnit.DAYS.between(from, to) > MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("Date range must not exceed " + MAX_RANGE_DAYS + " days");
+        }
+        parameters.add(SqlParameter.builder().name("from_date").value(from.toString()).build());
+        parameters.add(SqlParameter.builder().name("to_date").value(to.toString()).build());
+        int limit = limit(values.get("limit"));
+        String rollupSql = rollupSql();
+        RollupPeriod rollup = rollupSql == null ? null : rollup(from, to, values);
+        String source = rollup == null ? "stock_data" : rollup.table();
+        key.append('|').append(from).append('|').append(to).append('|').append(limit).append('|').append(source);
+        String statement = sqlBySourceAndLimit.computeIfAbsent(source + ':' + limit,
+                sourceAndLimit -> String.format(rollup == null ? sql : rollupSql, source, limit));
+        return new BoundQuery(statement, parameters, key.toString());
+    }
+
+    private static Object require(Map<String, Object> values, String name) {
+        Object value = values.get(name);
+        if (value == null || value.toString().isBlank()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static LocalDate date(Map<String, Object> values, String name) {
+        try {
+            return LocalDate.parse(require(values, name).toString().trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date for '" + name + "', expected yyyy-MM-dd");
+        }
+    }
+
+    private static int limit(Object value) {
+        if (value == null) {
+            return DEFAULT_LIMIT;
+        }
+        int limit;
+        try {
+            // JSON numbers arrive as Double
+            limit = value instanceof Number number ? (int) number.doubleValue() : Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit: " + value);
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    private static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Long.parseLong(value.trim());
+    }
+}
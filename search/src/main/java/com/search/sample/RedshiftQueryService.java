@@ -1,30 +1,42 @@
 package com.search.sample;
 
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.redshiftdata.RedshiftDataClient;
+import software.amazon.awssdk.services.redshiftdata.RedshiftDataAsyncClient;
 import software.amazon.awssdk.services.redshiftdata.model.*;
 
 import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class RedshiftQueryService {
 
     private static final String REDSHIFT_JDBC_URL = System.getenv("REDSHIFT_JDBC_URL");
+    // Parsed once per container, e.g. jdbc:redshift://<workgroup>.<account>.<region>.redshift-serverless.amazonaws.com:5439/<database>
+    private static final String WORKGROUP = REDSHIFT_JDBC_URL == null ? null : REDSHIFT_JDBC_URL.split("//")[1].split("\\.")[0];
+    private static final String DATABASE = REDSHIFT_JDBC_URL == null ? null : REDSHIFT_JDBC_URL.split(":5439/")[1];
+    // Completion polling starts short for quick queries and backs off exponentially up to the cap
+    private static final long INITIAL_POLL_DELAY_MILLIS = 50;
+    private static final long MAX_POLL_DELAY_MILLIS = 1000;
+    // How long a failed batch waits for the cancellation of its other statements to be sent
+    private static final long CANCEL_WAIT_MILLIS = 300;
+    // Leaves headroom under the 6 MB synchronous response limit once the runtime escapes the returned string
+    private static final long MAX_RESULT_BYTES = envLong("QUERY_RESULT_MAX_BYTES", 3L * 1024 * 1024);
 
-    private final RedshiftDataClient redshiftClient;
+    private final RedshiftDataAsyncClient redshiftClient;
     private LambdaLogger logger; // Logger instance
 
     @Inject
     public RedshiftQueryService() {
-        this.redshiftClient = RedshiftDataClient.builder()
-                .region(Region.of(System.getenv("AWS_REGION")))
-                .credentialsProvider(DefaultCredentialsProvider.create()) // Uses IAM Role
-                .build();
+        this.redshiftClient = AwsClients.REDSHIFT_DATA; // Uses IAM Role
     }
 
     public void setLogger(LambdaLogger logger) {
@@ -32,68 +44,265 @@ public class RedshiftQueryService {
     }
 
     /**
-     * Executes a SQL query using IAM authentication (No username/password needed).
+     * Executes a query using IAM authentication (No username/password needed) and returns the result serialized
+     * by {@link QueryResultWriter}. Results are served from {@link QueryResultCache} when the same query ran recently.
+     * A query still running after {@code timeoutMillis} is cancelled.
+     *
+     * @throws QueryFailedException if the query failed, was aborted or timed out; failures are never cached
      */
-    public List<Map<String, Object>> executeQuery(String sqlQuery) {
-        List<Map<String, Object>> results = new ArrayList<>();
+    public String executeQuery(BoundQuery query, long timeoutMillis) {
+        return executeQueries(List.of(query), timeoutMillis).get(0);
+    }
 
-        try {
-            long startTime = System.currentTimeMillis();
-            logger.log("[INFO] Executing SQL query: " + sqlQuery);
-
-            ExecuteStatementRequest request = ExecuteStatementRequest.builder()
-                    .workgroupName(getWorkgroupFromJdbcUrl())
-                    .database(getDatabaseFromJdbcUrl())
-                    .sql(sqlQuery)
-                    .build();
-
-            ExecuteStatementResponse response = redshiftClient.executeStatement(request);
-            String statementId = response.id();
-            logger.log("[INFO] Query execution started (Statement ID: " + statementId + ")");
-
-            // Wait for query completion
-            DescribeStatementResponse result;
-            do {
-                Thread.sleep(2000); // Poll every 2 seconds
-                result = redshiftClient.describeStatement(DescribeStatementRequest.builder()
-                        .id(statementId)
-                        .build());
-                logger.log("[DEBUG] Query Status: " + result.status());
-            } while (!result.status().equals(StatusString.FINISHED));
-
-            // Fetch query results
-            GetStatementResultResponse queryResult = redshiftClient.getStatementResult(
-                    GetStatementResultRequest.builder().id(statementId).build());
-
-            long executionTime = System.currentTimeMillis() - startTime;
-            logger.log("[INFO] Query execution completed in " + executionTime + "ms (Statement ID: " + statementId + ")");
-
-            // Process rows
-            queryResult.records().forEach(record -> {
-                Map<String, Object> row = new HashMap<>();
-                for (int i = 0; i < queryResult.columnMetadata().size(); i++) {
-                    row.put(queryResult.columnMetadata().get(i).name(), record.get(i).stringValue());
-                }
-                results.add(row);
-            });
+    /**
+     * Submits independent queries concurrently and waits for all of them, returning their results in the order of
+     * the queries. Every query shares the same timeout.
+     *
+     * @throws QueryFailedException for the first query, in order, that failed, was aborted or timed out
+     */
+    public List<String> executeQueries(List<BoundQuery> queries, long timeoutMillis) {
+        QueryResultCache.invalidateIfIngested(logger);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        List<CompletableFuture<String>> pending = new ArrayList<>();
+        // Id of each query's statement while it runs on Redshift
+        List<AtomicReference<String>> running = new ArrayList<>();
+        for (BoundQuery query : queries) {
+            AtomicReference<String> statementId = new AtomicReference<>();
+            running.add(statementId);
+            String cached = QueryResultCache.get(query.cacheKey());
+            if (cached != null) {
+                logger.log("[INFO] Serving cached result for query: " + query.cacheKey());
+                pending.add(CompletableFuture.completedFuture(cached));
+            } else {
+                pending.add(executeQueryAsync(query, deadline, statementId).thenApply(result -> {
+                    QueryResultCache.put(query.cacheKey(), result);
+                    return result;
+                }));
+            }
+        }
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                results.add(await(pending.get(i)));
+            } catch (QueryFailedException e) {
+                cancelRunning(pending, running);
+                throw queries.size() == 1 ? e : new QueryFailedException("Query " + (i + 1) + " of " + queries.size() + ": " + e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops the rest of a failed batch: their results are no longer cached and statements still running are
+     * cancelled, waiting briefly for the cancellations to be sent before the response is returned.
+     */
+    private void cancelRunning(List<CompletableFuture<String>> pending, List<AtomicReference<String>> running) {
+        List<CompletableFuture<?>> cancellations = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            pending.get(i).cancel(false);
+            String statementId = running.get(i).getAndSet(null);
+            if (statementId != null) {
+                cancellations.add(cancel(statementId));
+            }
+        }
+        CompletableFuture.allOf(cancellations.toArray(CompletableFuture<?>[]::new))
+                .completeOnTimeout(null, CANCEL_WAIT_MILLIS, TimeUnit.MILLISECONDS)
+                .join();
+    }
 
+    /**
+     * Cancels a running statement; the returned future completes once the request is answered, and a failure
+     * is logged rather than thrown.
+     */
+    private CompletableFuture<Void> cancel(String statementId) {
+        return redshiftClient.cancelStatement(CancelStatementRequest.builder().id(statementId).build())
+                .handle((response, failure) -> {
+                    if (failure != null) {
+                        logger.log("[WARN] Failed to cancel statement " + statementId + ": " + failure.getMessage());
+                    } else {
+                        logger.log("[INFO] Cancelled statement " + statementId);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Continues a result that was cut at the byte limit from the {@code nextToken} it returned.
+     *
+     * @throws IllegalArgumentException if the token was not issued by this service
+     * @throws QueryFailedException if the result could not be read in time
+     */
+    public String fetchNextPage(String nextToken, long timeoutMillis) {
+        ResultCursor cursor = ResultCursor.decode(nextToken);
+        return await(readResult(cursor.statementId(), cursor.pageToken(), cursor.offset(), new QueryResultWriter(MAX_RESULT_BYTES))
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private String await(CompletableFuture<String> query) {
+        try {
+            return query.get();
         } catch (InterruptedException e) {
             logger.log("[ERROR] Query execution interrupted: " + e.getMessage());
             Thread.currentThread().interrupt();
-        } catch (RedshiftDataException e) {
-            logger.log("[ERROR] Redshift Data API error: " + e.awsErrorDetails().errorMessage());
-        } catch (Exception e) {
-            logger.log("[ERROR] Unexpected error executing query: " + e.getMessage());
+            throw new QueryFailedException("Query execution was interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            String message;
+            if (cause instanceof RedshiftDataException redshiftDataException) {
+                message = "Redshift Data API error: " + redshiftDataException.awsErrorDetails().errorMessage();
+            } else if (cause instanceof TimeoutException) {
+                message = cause.getMessage() != null ? cause.getMessage() : "Query did not complete in time";
+            } else {
+                message = cause.getMessage();
+            }
+            logger.log("[ERROR] " + message);
+            throw new QueryFailedException(message);
         }
+    }
 
-        return results;
+    /**
+     * A query that failed, was aborted or timed out, with a message that can be returned to the caller.
+     */
+    public static class QueryFailedException extends RuntimeException {
+
+        QueryFailedException(String message) {
+            super(message);
+        }
     }
 
-    private String getWorkgroupFromJdbcUrl() {
-        return RedshiftQueryService.REDSHIFT_JDBC_URL.split("//")[1].split("\\.")[0];
+    /**
+     * Runs a query on the async client, keeping its statement id in {@code statementId} while it runs; the returned
+     * future fails if the statement fails or is aborted, or if the statement or the reading of its result is still
+     * going at the deadline.
+     */
+    private CompletableFuture<String> executeQueryAsync(BoundQuery query, long deadline, AtomicReference<String> statementId) {
+        long startTime = System.currentTimeMillis();
+        logger.log("[INFO] Executing query: " + query.cacheKey());
+
+        ExecuteStatementRequest request = ExecuteStatementRequest.builder()
+                .workgroupName(WORKGROUP)
+                .database(DATABASE)
+                .sql(query.sql())
+                .parameters(query.parameters())
+                .build();
+
+        return redshiftClient.executeStatement(request)
+                .thenCompose(response -> {
+                    logger.log("[INFO] Query execution started (Statement ID: " + response.id() + ")");
+                    statementId.set(response.id());
+                    return awaitCompletion(response.id(), deadline, INITIAL_POLL_DELAY_MILLIS)
+                            .whenComplete((statement, failure) -> statementId.compareAndSet(response.id(), null));
+                })
+                .thenCompose(statement -> {
+                    long executionTime = System.currentTimeMillis() - startTime;
+                    logger.log("[INFO] Query execution completed in " + executionTime + "ms (Statement ID: " + statement.id() + ")");
+                    if (!Boolean.TRUE.equals(statement.hasResultSet())) {
+                        return CompletableFuture.completedFuture(QueryResultWriter.EMPTY_RESULT);
+                    }
+                    return readResult(statement.id(), null, 0, new QueryResultWriter(MAX_RESULT_BYTES));
+                })
+                .orTimeout(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Polls the statement until it reaches a terminal state, doubling the delay between polls up to
+     * {@link #MAX_POLL_DELAY_MILLIS}. A statement still running at the deadline is cancelled.
+     */
+    private CompletableFuture<DescribeStatementResponse> awaitCompletion(String statementId, long deadline, long delayMillis) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return cancel(statementId).thenCompose(ignored -> CompletableFuture.failedFuture(
+                    new TimeoutException("Query did not complete in time and was cancelled (Statement ID: " + statementId + ")")));
+        }
+        return CompletableFuture.runAsync(() -> { },
+                        CompletableFuture.delayedExecutor(Math.min(delayMillis, remaining), TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> redshiftClient.describeStatement(DescribeStatementRequest.builder()
+                        .id(statementId)
+                        .build()))
+                .thenCompose(result -> {
+                    logger.log("[DEBUG] Query Status: " + result.status());
+                    return switch (result.status()) {
+                        case FINISHED -> CompletableFuture.completedFuture(result);
+                        case FAILED -> CompletableFuture.failedFuture(new IllegalStateException(
+                                "Query failed (Statement ID: " + statementId + "): " + result.error()));
+                        case ABORTED -> CompletableFuture.failedFuture(new IllegalStateException(
+                                "Query was aborted (Statement ID: " + statementId + ")"));
+                        default -> awaitCompletion(statementId, deadline, Math.min(delayMillis * 2, MAX_POLL_DELAY_MILLIS));
+                    };
+                });
+    }
+
+    /**
+     * Writes the statement's result page by page, starting {@code skipRows} into the page of {@code pageToken}, until
+     * the last page or the byte limit, where the result is closed with a cursor to the next unwritten row.
+     */
+    private CompletableFuture<String> readResult(String statementId, String pageToken, int skipRows, QueryResultWriter writer) {
+        return redshiftClient.getStatementResult(GetStatementResultRequest.builder()
+                        .id(statementId)
+                        .nextToken(pageToken)
+                        .build())
+                .thenCompose(page -> {
+                    writer.writeColumns(page.columnMetadata());
+                    List<List<Field>> records = page.records();
+                    for (int i = skipRows; i < records.size(); i++) {
+                        if (writer.isFull()) {
+                            return CompletableFuture.completedFuture(writer.finish(new ResultCursor(statementId, pageToken, i).encode()));
+                        }
+                        writer.writeRow(records.get(i));
+                    }
+                    String nextPageToken = page.nextToken();
+                    if (nextPageToken == null || nextPageToken.isEmpty()) {
+                        return CompletableFuture.completedFuture(writer.finish(null));
+                    }
+                    if (writer.isFull()) {
+                        return CompletableFuture.completedFuture(writer.finish(new ResultCursor(statementId, nextPageToken, 0).encode()));
+                    }
+                    return readResult(statementId, nextPageToken, 0, writer);
+                });
+    }
+
+    /**
+     * Position in a statement result: the Data API token of a page and the number of rows of that page already
+     * returned. Statement results stay available for 24 hours.
+     */
+    private record ResultCursor(String statementId, String pageToken, int offset) {
+
+        String encode() {
+            String cursor = statementId + "\n" + (pageToken == null ? "" : pageToken) + "\n" + offset;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static ResultCursor decode(String nextToken) {
+            String[] parts = new String(Base64.getUrlDecoder().decode(nextToken), StandardCharsets.UTF_8).split("\n", -1);
+            if (parts.length != 3 || parts[0].isEmpty()) {
+                throw new IllegalArgumentException("Invalid nextToken");
+            }
+            return new ResultCursor(parts[0], parts[1].isEmpty() ? null : parts[1], Integer.parseInt(parts[2]));
+        }
+    }
+
+    /**
+     * Runs the template, serialization and cursor code once so its classes are loaded and initialized before the
+     * first request, and with {@code primeClient} also sends a cheap Data API request to initialize the client's
+     * credentials, signing and connection pool. Called during static initialization, which SnapStart snapshots.
+     */
+    static void warmUp(boolean primeClient) {
+        QueryResultWriter writer = new QueryResultWriter(MAX_RESULT_BYTES);
+        writer.writeColumns(List.of(ColumnMetadata.builder().name("id").build(), ColumnMetadata.builder().name("name").build()));
+        writer.writeRow(List.of(Field.builder().longValue(1L).build(), Field.builder().stringValue("1").build()));
+        writer.finish(ResultCursor.decode(new ResultCursor("warm-up", null, 0).encode()).encode());
+        QueryTemplate.SYMBOL_HISTORY.bind(Map.of("symbol", "WARM", "from", "2000-01-01", "to", "2000-01-31"));
+        if (primeClient) {
+            try {
+                AwsClients.REDSHIFT_DATA.listStatements(ListStatementsRequest.builder().maxResults(1).build()).join();
+            } catch (RuntimeException e) {
+                System.out.println("[WARN] Priming the Redshift Data API client failed: " + e.getMessage());
+            }
+        }
     }
 
-    private String getDatabaseFromJdbcUrl() {
-        return RedshiftQueryService.REDSHIFT_JDBC_URL.split(":5439/")[1];
+    private static long envLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Long.parseLong(value.trim());
     }
 }
@@ -0,0 +1,53 @@
+package com.search.sample;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * The per-symbol OHLCV rollup tables the ingestion job maintains next to {@code stock_data}, one row per symbol and
+ * period starting at {@code period_start}.
+ */
+public enum RollupPeriod {
+    WEEK("stock_data_weekly"),
+    MONTH("stock_data_monthly"),
+    YEAR("stock_data_yearly");
+
+    private final String table;
+
+    RollupPeriod(String table) {
+        this.table = table;
+    }
+
+    public String table() {
+        return table;
+    }
+
+    /**
+     * Returns the coarsest period whose whole periods exactly cover the range, or {@code null} if the range does not
+     * start and end on period boundaries.
+     */
+    public static RollupPeriod covering(LocalDate from, LocalDate to) {
+        if (from.getDayOfYear() == 1 && to.getDayOfYear() == to.lengthOfYear()) {
+            return YEAR;
+        }
+        if (from.getDayOfMonth() == 1 && to.getDayOfMonth() == to.lengthOfMonth()) {
+            return MONTH;
+        }
+        if (from.getDayOfWeek() == DayOfWeek.MONDAY && to.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            return WEEK;
+        }
+        return null;
+    }
+
+    /**
+     * @throws IllegalArgumentException for an unknown period
+     */
+    public static RollupPeriod named(Object name) {
+        try {
+            return valueOf(String.valueOf(name).trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid period: " + name + ", expected WEEK, MONTH or YEAR");
+        }
+    }
+}
@@ -8,16 +8,37 @@ import com.google.gson.GsonBuilder;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 @Singleton
 public class SearchLambdaHandler implements RequestHandler<Map<String, Object>, String> {
 
     private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    // Time left to serialize the response once the queries have returned
+    private static final long RESPONSE_MARGIN_MILLIS = 500;
+    private static final RedshiftQueryService QUERY_SERVICE;
+
+    static {
+        long start = System.nanoTime();
+        QUERY_SERVICE = new RedshiftQueryService();
+        RedshiftQueryService.warmUp(Boolean.parseBoolean(System.getenv("SEARCH_PRIME_CLIENT")));
+        System.out.println("[INFO] Search handler initialized in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
     private final RedshiftQueryService redshiftQueryService;
     private LambdaLogger logger;
 
+    /**
+     * Used by the Lambda runtime, which needs a no-argument constructor; shares the service built during static
+     * initialization.
+     */
+    public SearchLambdaHandler() {
+        this(QUERY_SERVICE);
+    }
+
     @Inject
     public SearchLambdaHandler(RedshiftQueryService redshiftQueryService) {
         this.redshiftQueryService = redshiftQueryService;
@@ -26,7 +47,11 @@ public class SearchLambdaHandler implements RequestHandler<Map<String, Object>,
     @Override
     public String handleRequest(Map<String, Object> event, Context context) {
         this.logger = context.getLogger();
+        redshiftQueryService.setLogger(logger);
         logger.log("Received event: " + gson.toJson(event));
+        if (Boolean.TRUE.equals(event.get("warmUp"))) {
+            return "{\"warm\":true}"; // Scheduled keep-warm ping
+        }
 
         try {
             @SuppressWarnings("unchecked")
@@ -35,26 +60,70 @@ public class SearchLambdaHandler implements RequestHandler<Map<String, Object>,
                 return createErrorResponse("Missing arguments in event");
             }
 
-            String sqlQuery = (String) arguments.get("sqlQuery");
-            if (sqlQuery == null || sqlQuery.trim().isEmpty()) {
-                return createErrorResponse("SQL query cannot be empty");
+            long timeoutMillis = Math.max(0, context.getRemainingTimeInMillis() - RESPONSE_MARGIN_MILLIS);
+            String nextToken = (String) arguments.get("nextToken");
+            if (nextToken != null) {
+                try {
+                    return redshiftQueryService.fetchNextPage(nextToken, timeoutMillis);
+                } catch (IllegalArgumentException e) {
+                    return createErrorResponse("Invalid nextToken");
+                }
             }
 
-            if (!isSafeSQL(sqlQuery)) {
-                return createErrorResponse("Unsafe SQL query detected!");
+            List<BoundQuery> queries;
+            try {
+                queries = parseQueries(arguments);
+            } catch (IllegalArgumentException e) {
+                return createErrorResponse(e.getMessage());
+            }
+            if (arguments.containsKey("queries")) {
+                // Independent queries run concurrently and are answered in order
+                String response = "[" + String.join(",", redshiftQueryService.executeQueries(queries, timeoutMillis)) + "]";
+                QueryResultCache.logStats(logger);
+                return response;
             }
 
-            return gson.toJson(redshiftQueryService.executeQuery(sqlQuery));
+            String response = redshiftQueryService.executeQuery(queries.get(0), timeoutMillis);
+            QueryResultCache.logStats(logger);
+            return response;
 
+        } catch (RedshiftQueryService.QueryFailedException e) {
+            return createErrorResponse(e.getMessage());
         } catch (Exception e) {
             logger.log("Error processing request: " + e.getMessage());
             return createErrorResponse("Internal Server Error: " + e.getMessage());
         }
     }
 
-    private boolean isSafeSQL(String sql) {
-        String lowerSql = sql.toLowerCase();
-        return !(lowerSql.contains("drop ") || lowerSql.contains("delete ") || lowerSql.contains("insert "));
+    /**
+     * Reads either a single {@code query} with its {@code params}, or a {@code queries} list of such objects.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<BoundQuery> parseQueries(Map<String, Object> arguments) {
+        Object queries = arguments.get("queries");
+        if (queries == null) {
+            return List.of(bind(arguments));
+        }
+        if (!(queries instanceof List<?> list) || list.isEmpty()) {
+            throw new IllegalArgumentException("'queries' must be a non-empty list");
+        }
+        List<BoundQuery> bound = new ArrayList<>();
+        for (Object query : list) {
+            if (!(query instanceof Map)) {
+                throw new IllegalArgumentException("Every entry of 'queries' must be an object");
+            }
+            bound.add(bind((Map<String, Object>) query));
+        }
+        return bound;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BoundQuery bind(Map<String, Object> query) {
+        Object params = query.get("params");
+        if (params != null && !(params instanceof Map)) {
+            throw new IllegalArgumentException("'params' must be an object");
+        }
+        return QueryTemplate.named(query.get("query")).bind((Map<String, Object>) params);
     }
 
     private String createErrorResponse(String message) {
@@ -0,0 +1,94 @@
+package com.search.sample;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.redshiftdata.RedshiftDataAsyncClient;
+import software.amazon.awssdk.services.redshiftdata.model.ListStatementsRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the search Lambda, each sample in a fresh JVM: the init phase alone, and the init phase followed by
+ * the first Data API request, answered by a local stub. The {@code Before} benchmarks build the client the way
+ * {@code RedshiftQueryService} did before {@link AwsClients}: {@code DefaultCredentialsProvider} and an HTTP client
+ * chosen by the SDK. Run with {@code AWS_REGION}, {@code AWS_ACCESS_KEY_ID} and {@code AWS_SECRET_ACCESS_KEY} set,
+ * as Lambda sets them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 20, jvmArgsAppend = "-Daws.endpointUrl=http://localhost:" + ColdStartBenchmark.DATA_API_PORT)
+public class ColdStartBenchmark {
+
+    static final int DATA_API_PORT = 18555;
+    private static final ListStatementsRequest LIST_STATEMENTS = ListStatementsRequest.builder().maxResults(1).build();
+
+    private HttpServer dataApi;
+
+    @Setup
+    public void startDataApi() throws IOException {
+        dataApi = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), DATA_API_PORT), 0);
+        dataApi.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"Statements\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.1");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        });
+        dataApi.start();
+    }
+
+    @TearDown
+    public void stopDataApi() {
+        dataApi.stop(0);
+    }
+
+    @Benchmark
+    public Object initBefore() {
+        return previousClient();
+    }
+
+    @Benchmark
+    public Object initAfter() {
+        return new SearchLambdaHandler();
+    }
+
+    @Benchmark
+    public Object firstRequestBefore() {
+        return previousClient().listStatements(LIST_STATEMENTS).join();
+    }
+
+    @Benchmark
+    public Object firstRequestAfter() {
+        new SearchLambdaHandler();
+        return AwsClients.REDSHIFT_DATA.listStatements(LIST_STATEMENTS).join();
+    }
+
+    private static RedshiftDataAsyncClient previousClient() {
+        return RedshiftDataAsyncClient.builder()
+                .region(Region.of(System.getenv("AWS_REGION")))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .build();
+    }
+}
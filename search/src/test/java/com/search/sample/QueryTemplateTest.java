@@ -0,0 +1,133 @@
+package com.search.sample;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import software.amazon.awssdk.services.redshiftdata.model.SqlParameter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryTemplateTest {
+
+    /**
+     * A range of whole years would be answered from a rollup by any template that supports one.
+     */
+    @ParameterizedTest
+    @EnumSource(QueryTemplate.class)
+    void bindsRangeOfWholePeriods(QueryTemplate template) {
+        BoundQuery query = template.bind(Map.of("symbol", "AAPL", "period", "MONTH", "from", "2023-01-01", "to", "2023-12-31"));
+
+        String source = template == QueryTemplate.OHLC_SUMMARY ? "stock_data_yearly"
+                : template == QueryTemplate.PERIOD_OHLC ? "stock_data_monthly" : "stock_data";
+        assertTrue(query.sql().contains("FROM " + source + "\n"), query.sql());
+        assertEquals(source, query.cacheKey().substring(query.cacheKey().lastIndexOf('|') + 1));
+    }
+
+    @Test
+    void sendsSymbolAndDatesAsParameters() {
+        BoundQuery query = QueryTemplate.SYMBOL_HISTORY.bind(Map.of("symbol", " brk.b ", "from", "2023-01-03", "to", "2023-02-10"));
+
+        assertEquals(List.of(parameter("symbol", "BRK.B"), parameter("from_date", "2023-01-03"), parameter("to_date", "2023-02-10")),
+                query.parameters());
+        assertFalse(query.sql().contains("BRK.B"), query.sql());
+        assertFalse(query.sql().contains("2023-"), query.sql());
+        assertEquals(query.sql(), QueryTemplate.SYMBOL_HISTORY.bind(Map.of("symbol", "MSFT", "from", "2020-05-01", "to", "2021-05-01")).sql());
+    }
+
+    @Test
+    void appliesDefaultLimit() {
+        BoundQuery query = QueryTemplate.DATE_RANGE.bind(Map.of("from", "2023-01-03", "to", "2023-01-04"));
+
+        assertTrue(query.sql().endsWith("LIMIT 1000"), query.sql());
+        assertTrue(query.cacheKey().endsWith("|1000|stock_data"), query.cacheKey());
+    }
+
+    @Test
+    void acceptsLimitUpToMaximum() {
+        BoundQuery query = QueryTemplate.TOP_VOLUME.bind(Map.of("from", "2023-01-03", "to", "2023-01-04", "limit", 10000.0));
+
+        assertTrue(query.sql().endsWith("LIMIT 10000"), query.sql());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "10001", "-5"})
+    void rejectsLimitOutOfBounds(String limit) {
+        assertRejected("Limit must be between 1 and 10000", QueryTemplate.DATE_RANGE,
+                Map.of("from", "2023-01-03", "to", "2023-01-04", "limit", limit));
+    }
+
+    @Test
+    void rejectsNonNumericLimit() {
+        assertRejected("Invalid limit: ten", QueryTemplate.DATE_RANGE, Map.of("from", "2023-01-03", "to", "2023-01-04", "limit", "ten"));
+    }
+
+    @Test
+    void acceptsRangeUpToMaximum() {
+        QueryTemplate.DATE_RANGE.bind(Map.of("from", "2000-01-01", "to", "2010-01-08"));
+
+        assertRejected("Date range must not exceed 3660 days", QueryTemplate.DATE_RANGE, Map.of("from", "2000-01-01", "to", "2010-01-09"));
+    }
+
+    @Test
+    void rejectsToBeforeFrom() {
+        assertRejected("'to' must not be before 'from'", QueryTemplate.DATE_RANGE, Map.of("from", "2023-01-04", "to", "2023-01-03"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2023-13-01", "2023-02-30", "03/01/2023", "2023-1-3", "yesterday"})
+    void rejectsMalformedDate(String date) {
+        assertRejected("Invalid date for 'from', expected yyyy-MM-dd", QueryTemplate.DATE_RANGE, Map.of("from", date, "to", "2023-01-03"));
+    }
+
+    @Test
+    void rejectsMissingDate() {
+        assertRejected("Missing parameter: to", QueryTemplate.DATE_RANGE, Map.of("from", "2023-01-03"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"AAPL'; DROP TABLE stock_data; --", "TOOLONGSYMBOL", "A B"})
+    void rejectsInvalidSymbol(String symbol) {
+        Map<String, Object> params = new HashMap<>(Map.of("from", "2023-01-03", "to", "2023-01-04"));
+        params.put("symbol", symbol);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> QueryTemplate.SYMBOL_HISTORY.bind(params));
+        assertTrue(e.getMessage().startsWith("Invalid symbol: "), e.getMessage());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = QueryTemplate.class, names = {"SYMBOL_HISTORY", "OHLC_SUMMARY", "PERIOD_OHLC"})
+    void rejectsMissingSymbol(QueryTemplate template) {
+        assertRejected("Missing parameter: symbol", template, Map.of("period", "WEEK", "from", "2023-01-03", "to", "2023-01-04"));
+        assertRejected("Missing parameter: symbol", template, Map.of("symbol", " ", "period", "WEEK", "from", "2023-01-03", "to", "2023-01-04"));
+    }
+
+    @Test
+    void resolvesTemplateByName() {
+        assertEquals(QueryTemplate.OHLC_SUMMARY, QueryTemplate.named(" ohlc_summary "));
+    }
+
+    @Test
+    void rejectsUnknownTemplateName() {
+        IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class, () -> QueryTemplate.named("DROP_TABLE"));
+        assertEquals("Unknown query: DROP_TABLE", unknown.getMessage());
+        IllegalArgumentException missing = assertThrows(IllegalArgumentException.class, () -> QueryTemplate.named(null));
+        assertEquals("Missing query name", missing.getMessage());
+    }
+
+    private static void assertRejected(String message, QueryTemplate template, Map<String, Object> params) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> template.bind(params));
+        assertEquals(message, e.getMessage());
+    }
+
+    private static SqlParameter parameter(String name, String value) {
+        return SqlParameter.builder().name(name).value(value).build();
+    }
+}
@@ -0,0 +1,40 @@
+package com.search.sample;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Pins the tables and period boundaries shared with the ingestion job's {@code RollupPeriod}, which creates the
+ * tables and buckets rows with {@code DATE_TRUNC}: weeks start on Monday, months and years on their first day.
+ */
+class RollupPeriodTest {
+
+    @Test
+    void readsTheTablesTheIngestionJobMaintains() {
+        assertEquals("stock_data_weekly", RollupPeriod.WEEK.table());
+        assertEquals("stock_data_monthly", RollupPeriod.MONTH.table());
+        assertEquals("stock_data_yearly", RollupPeriod.YEAR.table());
+        assertEquals(3, RollupPeriod.values().length);
+    }
+
+    @Test
+    void coversRangesOfWholePeriods() {
+        // 2024-01-01 is a Monday
+        assertEquals(RollupPeriod.YEAR, RollupPeriod.covering(LocalDate.parse("2023-01-01"), LocalDate.parse("2024-12-31")));
+        assertEquals(RollupPeriod.MONTH, RollupPeriod.covering(LocalDate.parse("2024-02-01"), LocalDate.parse("2024-02-29")));
+        assertEquals(RollupPeriod.MONTH, RollupPeriod.covering(LocalDate.parse("2024-01-01"), LocalDate.parse("2024-03-31")));
+        assertEquals(RollupPeriod.WEEK, RollupPeriod.covering(LocalDate.parse("2024-01-08"), LocalDate.parse("2024-01-21")));
+    }
+
+    @Test
+    void readsDailyRowsForRangesOffPeriodBoundaries() {
+        // Sunday to Saturday is a whole week only if weeks started on Sunday
+        assertNull(RollupPeriod.covering(LocalDate.parse("2024-01-07"), LocalDate.parse("2024-01-13")));
+        assertNull(RollupPeriod.covering(LocalDate.parse("2024-01-02"), LocalDate.parse("2024-01-31")));
+        assertNull(RollupPeriod.covering(LocalDate.parse("2024-01-01"), LocalDate.parse("2024-12-30")));
+    }
+}